@@ -0,0 +1,322 @@
+package com.getcapacitor.community.media;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-bucket aggregate of the photo and video library: name, directory, item count, newest item and
+ * latest modification time.
+ *
+ * The index is built from a Files query over narrow columns, plus a lookup of the file path of each
+ * bucket's cover, and kept in memory for as long as the {@link MediaStoreObserver} generation doesn't
+ * change. It is also written to disk together with a library token, so the first call after an app
+ * restart can skip the scan when nothing changed.
+ */
+class MediaAlbumIndex {
+
+    static class Album {
+
+        final String bucketId;
+        final String name;
+        // Directory of the bucket's newest item, which is what album identifiers have always been
+        String identifier;
+        final String coverIdentifier;
+        int count;
+        long lastModified;
+
+        Album(String bucketId, String name, String identifier, String coverIdentifier) {
+            this.bucketId = bucketId;
+            this.name = name;
+            this.identifier = identifier;
+            this.coverIdentifier = coverIdentifier;
+        }
+    }
+
+    private static class Snapshot {
+
+        final String generation;
+        final List<Album> albums;
+
+        Snapshot(String generation, List<Album> albums) {
+            this.generation = generation;
+            this.albums = albums;
+        }
+    }
+
+    private static final Uri FILES_URI = MediaStore.Files.getContentUri("external");
+    private static final String MEDIA_SELECTION =
+        MediaStore.Files.FileColumns.MEDIA_TYPE +
+        " IN (" +
+        MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE +
+        ", " +
+        MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO +
+        ")";
+    private static final int MAX_SELECTION_ARGS = 500;
+
+    private final Context context;
+    private final File cacheFile;
+
+    private List<Album> albums;
+    private String albumsGeneration;
+    private String albumsToken;
+    // Last result and its generation, readable without waiting for a build in progress
+    private volatile Snapshot current;
+
+    MediaAlbumIndex(Context context, File cacheFile) {
+        this.context = context;
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Returns the albums the last call to {@link #getAlbums} returned if they are still for this
+     * generation, or null if the index has to be built or checked first. Never blocks.
+     *
+     * @param generation the current {@link MediaStoreObserver} generation
+     */
+    List<Album> getIfCurrent(String generation) {
+        Snapshot snapshot = current;
+        return snapshot != null && generation.equals(snapshot.generation) ? snapshot.albums : null;
+    }
+
+    /**
+     * Returns the albums in order of their newest item, newest first.
+     *
+     * @param generation the current {@link MediaStoreObserver} generation
+     */
+    synchronized List<Album> getAlbums(String generation) {
+        if (albums != null && generation.equals(albumsGeneration)) {
+            return albums;
+        }
+
+        String token = getLibraryToken();
+        if (albums == null || !token.equals(albumsToken)) {
+            List<Album> stored = readCacheFile(token);
+            if (stored != null) {
+                albums = stored;
+            } else {
+                albums = Collections.unmodifiableList(build());
+                writeCacheFile(token, albums);
+            }
+            albumsToken = token;
+        }
+        albumsGeneration = generation;
+        current = new Snapshot(generation, albums);
+        return albums;
+    }
+
+    private List<Album> build() {
+        // DATA is left out: it is the widest column and only needed for one row per bucket
+        String[] projection = new String[] {
+            MediaStore.MediaColumns._ID,
+            MediaStore.MediaColumns.BUCKET_ID,
+            MediaStore.MediaColumns.BUCKET_DISPLAY_NAME,
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.Files.FileColumns.MEDIA_TYPE
+        };
+        // Newest first, so the first row seen for a bucket is its cover
+        String sortOrder = MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC";
+
+        LinkedHashMap<String, Album> buckets = new LinkedHashMap<>();
+        Map<Long, Album> covers = new HashMap<>();
+        try (Cursor cursor = context.getContentResolver().query(FILES_URI, projection, MEDIA_SELECTION, null, sortOrder)) {
+            if (cursor == null) {
+                return new ArrayList<>();
+            }
+
+            int idIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID);
+            int bucketIdIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.BUCKET_ID);
+            int bucketNameIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.BUCKET_DISPLAY_NAME);
+            int dateModifiedIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
+            int mediaTypeIdx = cursor.getColumnIndexOrThrow(MediaStore.Files.FileColumns.MEDIA_TYPE);
+
+            while (cursor.moveToNext()) {
+                String bucketId = cursor.getString(bucketIdIdx);
+                if (bucketId == null) {
+                    continue;
+                }
+
+                Album album = buckets.get(bucketId);
+                if (album == null) {
+                    long coverId = cursor.getLong(idIdx);
+                    Uri base = cursor.getInt(mediaTypeIdx) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+                        ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                        : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+                    Uri cover = Uri.withAppendedPath(base, String.valueOf(coverId));
+
+                    album = new Album(bucketId, cursor.getString(bucketNameIdx), null, cover.toString());
+                    buckets.put(bucketId, album);
+                    covers.put(coverId, album);
+                }
+
+                album.count++;
+                album.lastModified = Math.max(album.lastModified, cursor.getLong(dateModifiedIdx));
+            }
+        }
+
+        resolveDirectories(covers);
+        return new ArrayList<>(buckets.values());
+    }
+
+    /**
+     * Sets each album's identifier to the directory of its cover, reading DATA for the cover rows only.
+     */
+    private void resolveDirectories(Map<Long, Album> covers) {
+        List<Long> ids = new ArrayList<>(covers.keySet());
+        String[] projection = new String[] { MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA };
+
+        // Stay well below SQLite's bound parameter limit
+        for (int start = 0; start < ids.size(); start += MAX_SELECTION_ARGS) {
+            List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_SELECTION_ARGS));
+            StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+            String[] args = new String[chunk.size()];
+            for (int i = 0; i < args.length; i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                args[i] = String.valueOf(chunk.get(i));
+            }
+            selection.append(")");
+
+            try (Cursor cursor = context.getContentResolver().query(FILES_URI, projection, selection.toString(), args, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    Album album = covers.get(cursor.getLong(0));
+                    String data = cursor.getString(1);
+                    if (album != null && data != null) {
+                        album.identifier = new File(data).getParent();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a token that identifies the state of the library across process restarts. API 30+ has
+     * a MediaStore version and generation for this; older releases fall back to a fingerprint of the
+     * item count, newest id and latest modification time.
+     */
+    private String getLibraryToken() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return MediaStore.getVersion(context) + ":" + MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        }
+
+        long count = 0;
+        String[] projection = new String[] { MediaStore.MediaColumns._ID };
+        try (Cursor cursor = context.getContentResolver().query(FILES_URI, projection, MEDIA_SELECTION, null, null)) {
+            if (cursor != null) {
+                count = cursor.getCount();
+            }
+        }
+        long maxId = queryMax(MediaStore.MediaColumns._ID);
+        long maxModified = queryMax(MediaStore.MediaColumns.DATE_MODIFIED);
+        return Build.VERSION.SDK_INT + ":" + count + ":" + maxId + ":" + maxModified;
+    }
+
+    private long queryMax(String column) {
+        // Below API 30 the provider accepts a LIMIT in the sort order
+        String sortOrder = column + " DESC LIMIT 1";
+        try (Cursor cursor = context.getContentResolver().query(FILES_URI, new String[] { column }, MEDIA_SELECTION, null, sortOrder)) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private List<Album> readCacheFile(String token) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try {
+            JSONObject obj = new JSONObject(new String(readFully(cacheFile), StandardCharsets.UTF_8));
+            if (!token.equals(obj.getString("token"))) {
+                return null;
+            }
+
+            JSONArray items = obj.getJSONArray("albums");
+            List<Album> result = new ArrayList<>(items.length());
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject item = items.getJSONObject(i);
+                Album album = new Album(
+                    item.getString("bucketId"),
+                    item.isNull("name") ? null : item.getString("name"),
+                    item.isNull("identifier") ? null : item.getString("identifier"),
+                    item.getString("coverIdentifier")
+                );
+                album.count = item.getInt("count");
+                album.lastModified = item.getLong("lastModified");
+                result.add(album);
+            }
+            return Collections.unmodifiableList(result);
+        } catch (IOException | JSONException e) {
+            Log.w("MediaPlugin", "Ignoring unreadable album index", e);
+            return null;
+        }
+    }
+
+    private void writeCacheFile(String token, List<Album> albums) {
+        try {
+            JSONArray items = new JSONArray();
+            for (Album album : albums) {
+                JSONObject item = new JSONObject();
+                item.put("bucketId", album.bucketId);
+                item.put("name", album.name != null ? album.name : JSONObject.NULL);
+                item.put("identifier", album.identifier != null ? album.identifier : JSONObject.NULL);
+                item.put("coverIdentifier", album.coverIdentifier);
+                item.put("count", album.count);
+                item.put("lastModified", album.lastModified);
+                items.put(item);
+            }
+
+            JSONObject obj = new JSONObject();
+            obj.put("token", token);
+            obj.put("albums", items);
+
+            File tmp = new File(cacheFile.getPath() + ".tmp");
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                os.write(obj.toString().getBytes(StandardCharsets.UTF_8));
+            } finally {
+                os.close();
+            }
+            if (!tmp.renameTo(cacheFile)) {
+                tmp.delete();
+            }
+        } catch (IOException | JSONException e) {
+            Log.w("MediaPlugin", "Could not write album index", e);
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = is.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += read;
+            }
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,102 @@
+package com.getcapacitor.community.media;
+
+import android.graphics.Bitmap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Keeps mutable bitmaps to decode into with inBitmap, so decoding a page of thumbnails below API 28
+ * reuses a few pixel buffers instead of allocating one per item. The pool is capped in bytes and
+ * drops its least recently returned bitmaps first.
+ */
+class MediaBitmapPool {
+
+    private final ArrayDeque<Bitmap> free = new ArrayDeque<>();
+    private long maxBytes;
+    private long size = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    MediaBitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Removes and returns the smallest pooled bitmap with room for byteCount bytes, or null if there
+     * is none.
+     */
+    synchronized Bitmap get(int byteCount) {
+        Bitmap best = null;
+        for (Bitmap bitmap : free) {
+            int allocated = bitmap.getAllocationByteCount();
+            if (allocated >= byteCount && (best == null || allocated < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+
+        if (best == null) {
+            missCount++;
+            return null;
+        }
+
+        free.remove(best);
+        size -= best.getAllocationByteCount();
+        hitCount++;
+        return best;
+    }
+
+    /**
+     * Hands a bitmap back for reuse. Bitmaps that can't be decoded into are recycled instead.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getAllocationByteCount() > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        free.push(bitmap);
+        size += bitmap.getAllocationByteCount();
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Changes the byte cap, recycling the least recently returned bitmaps that no longer fit.
+     */
+    synchronized void resize(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long targetBytes) {
+        Iterator<Bitmap> oldest = free.descendingIterator();
+        while (size > targetBytes && oldest.hasNext()) {
+            Bitmap evicted = oldest.next();
+            oldest.remove();
+            size -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized long maxSize() {
+        return maxBytes;
+    }
+
+    synchronized long hitCount() {
+        return hitCount;
+    }
+
+    synchronized long missCount() {
+        return missCount;
+    }
+}
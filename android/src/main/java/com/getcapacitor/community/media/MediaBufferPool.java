@@ -0,0 +1,124 @@
+package com.getcapacitor.community.media;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the byte buffers thumbnails are encoded into, so a page of thumbnails reuses a few arrays
+ * instead of growing a new stream per item. Buffers keep the capacity they have grown to.
+ */
+class MediaBufferPool {
+
+    /**
+     * A ByteArrayOutputStream whose content can be read without copying it first.
+     */
+    static class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int length() {
+            return count;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Decodes the content as ASCII into a string, the only copy made of it.
+         */
+        String toAsciiString() {
+            return new String(buf, 0, count, StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final ArrayDeque<Buffer> free = new ArrayDeque<>();
+    private int maxCount;
+    private final int maxBufferSize;
+    private long size = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxCount      the number of buffers kept for reuse
+     * @param maxBufferSize buffers that grew larger than this are dropped rather than kept
+     */
+    MediaBufferPool(int maxCount, int maxBufferSize) {
+        this.maxCount = maxCount;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Returns an empty buffer with room for at least expectedSize bytes, reused when one is free.
+     */
+    synchronized Buffer acquire(int expectedSize) {
+        Buffer buffer = null;
+        for (Buffer candidate : free) {
+            if (candidate.capacity() >= expectedSize) {
+                buffer = candidate;
+                break;
+            }
+        }
+
+        if (buffer == null) {
+            missCount++;
+            return new Buffer(expectedSize);
+        }
+
+        free.remove(buffer);
+        size -= buffer.capacity();
+        hitCount++;
+        buffer.reset();
+        return buffer;
+    }
+
+    synchronized void release(Buffer buffer) {
+        if (buffer.capacity() > maxBufferSize) {
+            return;
+        }
+        free.push(buffer);
+        size += buffer.capacity();
+        trimToCount(maxCount);
+    }
+
+    /**
+     * Changes the number of buffers kept, dropping the least recently returned ones that no longer fit.
+     */
+    synchronized void resize(int maxCount) {
+        this.maxCount = maxCount;
+        trimToCount(maxCount);
+    }
+
+    synchronized void clear() {
+        trimToCount(0);
+    }
+
+    private void trimToCount(int count) {
+        while (free.size() > count) {
+            size -= free.removeLast().capacity();
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized long maxSize() {
+        return (long) maxCount * maxBufferSize;
+    }
+
+    synchronized long hitCount() {
+        return hitCount;
+    }
+
+    synchronized long missCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,345 @@
+package com.getcapacitor.community.media;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Computes which photos and videos were inserted, updated or deleted since a previously issued token.
+ *
+ * Each token names a snapshot of the library: the MediaStore generation (API 30+) or the latest
+ * DATE_MODIFIED (older releases), the highest _ID, and the set of item ids. Changed rows are found
+ * with a query selecting only rows past the snapshot, so their cost scales with the number of
+ * changes, and are reported as inserted when the snapshot doesn't hold their id. This also covers
+ * rows that reappear with an old _ID or generation, such as published pending items, items restored
+ * from the trash or newly granted under partial access. MediaStore keeps no tombstones, so deletions
+ * are derived from the item count and, only if it is off, from a merge of the _ID column against the
+ * snapshot's id set, which also picks up reappearing rows the query didn't select.
+ *
+ * The snapshot is persisted, so tokens survive app restarts. Only the latest token can be diffed;
+ * older ones ask the caller for a full resync.
+ */
+class MediaChangeTracker {
+
+    static class Changes {
+
+        String token;
+        boolean fullResync;
+        final List<String> inserted = new ArrayList<>();
+        final List<String> updated = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+    }
+
+    private static class Snapshot {
+
+        String id;
+        String version;
+        long generation;
+        long maxModified;
+        long maxId;
+        // Item ids encoded as (id << 1 | isVideo), sorted ascending
+        long[] keys;
+    }
+
+    private static final Uri FILES_URI = MediaStore.Files.getContentUri("external");
+    private static final String MEDIA_SELECTION =
+        MediaStore.Files.FileColumns.MEDIA_TYPE +
+        " IN (" +
+        MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE +
+        ", " +
+        MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO +
+        ")";
+    private static final String[] ID_PROJECTION = new String[] {
+        MediaStore.MediaColumns._ID,
+        MediaStore.Files.FileColumns.MEDIA_TYPE
+    };
+
+    private final Context context;
+    private final File snapshotFile;
+    private final MediaStoreObserver observer;
+
+    private Snapshot snapshot;
+    private boolean snapshotLoaded = false;
+    // Observer generation at the time the snapshot was last known to be current
+    private String observedGeneration;
+
+    MediaChangeTracker(Context context, File snapshotFile, MediaStoreObserver observer) {
+        this.context = context;
+        this.snapshotFile = snapshotFile;
+        this.observer = observer;
+    }
+
+    /**
+     * Returns the changes since a token, or a fresh token with fullResync set if the token is missing
+     * or can no longer be diffed.
+     */
+    synchronized Changes getChanges(String since) {
+        String generation = observer.getGeneration();
+        if (!snapshotLoaded) {
+            snapshot = readSnapshot();
+            snapshotLoaded = true;
+        }
+
+        Changes changes = new Changes();
+        if (snapshot == null || since == null || !since.equals(snapshot.id) || !getVersion().equals(snapshot.version)) {
+            snapshot = takeSnapshot();
+            writeSnapshot(snapshot);
+            observedGeneration = generation;
+            changes.token = snapshot.id;
+            changes.fullResync = true;
+            return changes;
+        }
+
+        changes.token = snapshot.id;
+        if (generation.equals(observedGeneration)) {
+            // Nothing was reported since the snapshot was last checked
+            return changes;
+        }
+
+        // Read the new high-water marks before querying, so a change racing with the queries is
+        // reported again next time rather than missed
+        long newGeneration = getGeneration();
+        long newMaxModified = getMaxModified();
+
+        String changedSelection;
+        String[] changedArgs;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            // Inserts start out with GENERATION_MODIFIED equal to GENERATION_ADDED
+            changedSelection = MediaStore.MediaColumns.GENERATION_MODIFIED + " > ?";
+            changedArgs = new String[] { String.valueOf(snapshot.generation) };
+        } else {
+            // DATE_MODIFIED has second granularity, so items modified in the snapshot's last second
+            // are reported again
+            changedSelection = MediaStore.MediaColumns._ID + " > ? OR " + MediaStore.MediaColumns.DATE_MODIFIED + " >= ?";
+            changedArgs = new String[] { String.valueOf(snapshot.maxId), String.valueOf(snapshot.maxModified) };
+        }
+
+        List<Long> insertedKeys = new ArrayList<>();
+        try (Cursor cursor = queryIds(changedSelection, changedArgs)) {
+            while (cursor != null && cursor.moveToNext()) {
+                long key = toKey(cursor);
+                if (indexOfId(snapshot.keys, key >> 1) < 0) {
+                    insertedKeys.add(key);
+                    changes.inserted.add(toIdentifier(key));
+                } else {
+                    changes.updated.add(toIdentifier(key));
+                }
+            }
+        }
+
+        // Without deletions the library holds exactly the snapshot plus the inserts
+        long[] remaining = snapshot.keys;
+        if (countMedia() != snapshot.keys.length + insertedKeys.size()) {
+            remaining = reconcile(snapshot.keys, insertedKeys, changes);
+        }
+
+        observedGeneration = generation;
+        if (changes.inserted.isEmpty() && changes.updated.isEmpty() && changes.deleted.isEmpty()) {
+            return changes;
+        }
+
+        long[] keys = Arrays.copyOf(remaining, remaining.length + insertedKeys.size());
+        for (int i = 0; i < insertedKeys.size(); i++) {
+            keys[remaining.length + i] = insertedKeys.get(i);
+        }
+        Arrays.sort(keys);
+
+        Snapshot next = new Snapshot();
+        next.id = UUID.randomUUID().toString();
+        next.version = snapshot.version;
+        next.generation = newGeneration;
+        next.maxModified = newMaxModified;
+        next.maxId = Math.max(snapshot.maxId, keys.length > 0 ? keys[keys.length - 1] >> 1 : 0);
+        next.keys = keys;
+        writeSnapshot(next);
+
+        snapshot = next;
+        changes.token = next.id;
+        return changes;
+    }
+
+    private Snapshot takeSnapshot() {
+        Snapshot s = new Snapshot();
+        s.id = UUID.randomUUID().toString();
+        s.version = getVersion();
+        s.generation = getGeneration();
+        s.maxModified = getMaxModified();
+
+        long[] keys = new long[0];
+        try (Cursor cursor = queryIds(null, null)) {
+            if (cursor != null) {
+                keys = new long[cursor.getCount()];
+                int i = 0;
+                while (cursor.moveToNext() && i < keys.length) {
+                    keys[i++] = toKey(cursor);
+                }
+                keys = Arrays.copyOf(keys, i);
+            }
+        }
+        s.keys = keys;
+        s.maxId = keys.length > 0 ? keys[keys.length - 1] >> 1 : 0;
+        return s;
+    }
+
+    /**
+     * Merges the current _ID column against the snapshot ids. Snapshot items that are gone are added
+     * to the deleted identifiers, and items the snapshot doesn't hold that the change query missed to
+     * the inserts. Returns the snapshot keys that are still present.
+     */
+    private long[] reconcile(long[] keys, List<Long> insertedKeys, Changes changes) {
+        Set<Long> reported = new HashSet<>();
+        for (long key : insertedKeys) {
+            reported.add(key >> 1);
+        }
+
+        long[] remaining = new long[keys.length];
+        int count = 0;
+        int next = 0;
+        try (Cursor cursor = queryIds(null, null)) {
+            if (cursor == null) {
+                return keys;
+            }
+
+            while (cursor.moveToNext()) {
+                long key = toKey(cursor);
+                long id = key >> 1;
+                while (next < keys.length && keys[next] >> 1 < id) {
+                    changes.deleted.add(toIdentifier(keys[next++]));
+                }
+                if (next < keys.length && keys[next] >> 1 == id) {
+                    remaining[count++] = keys[next++];
+                } else if (reported.add(id)) {
+                    insertedKeys.add(key);
+                    changes.inserted.add(toIdentifier(key));
+                }
+            }
+        }
+        while (next < keys.length) {
+            changes.deleted.add(toIdentifier(keys[next++]));
+        }
+        return Arrays.copyOf(remaining, count);
+    }
+
+    private Cursor queryIds(String selection, String[] selectionArgs) {
+        String where = selection != null ? MEDIA_SELECTION + " AND (" + selection + ")" : MEDIA_SELECTION;
+        return context.getContentResolver().query(FILES_URI, ID_PROJECTION, where, selectionArgs, MediaStore.MediaColumns._ID + " ASC");
+    }
+
+    private int countMedia() {
+        String[] projection = new String[] { MediaStore.MediaColumns._ID };
+        try (Cursor cursor = context.getContentResolver().query(FILES_URI, projection, MEDIA_SELECTION, null, null)) {
+            return cursor != null ? cursor.getCount() : 0;
+        }
+    }
+
+    /**
+     * Returns the latest DATE_MODIFIED, which is what updates are tracked by below API 30.
+     */
+    private long getMaxModified() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return 0;
+        }
+
+        // Below API 30 the provider accepts a LIMIT in the sort order
+        String column = MediaStore.MediaColumns.DATE_MODIFIED;
+        String sortOrder = column + " DESC LIMIT 1";
+        try (Cursor cursor = context.getContentResolver().query(FILES_URI, new String[] { column }, MEDIA_SELECTION, null, sortOrder)) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private String getVersion() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return MediaStore.getVersion(context);
+        }
+        return "";
+    }
+
+    private long getGeneration() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        }
+        return 0;
+    }
+
+    private static long toKey(Cursor cursor) {
+        boolean video = cursor.getInt(1) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+        return (cursor.getLong(0) << 1) | (video ? 1 : 0);
+    }
+
+    private static String toIdentifier(long key) {
+        Uri base = (key & 1) == 1 ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        return Uri.withAppendedPath(base, String.valueOf(key >> 1)).toString();
+    }
+
+    private static int indexOfId(long[] keys, long id) {
+        int index = Arrays.binarySearch(keys, id << 1);
+        if (index >= 0) {
+            return index;
+        }
+        index = Arrays.binarySearch(keys, (id << 1) | 1);
+        return index >= 0 ? index : -1;
+    }
+
+    private Snapshot readSnapshot() {
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            Snapshot s = new Snapshot();
+            s.id = in.readUTF();
+            s.version = in.readUTF();
+            s.generation = in.readLong();
+            s.maxModified = in.readLong();
+            s.maxId = in.readLong();
+            s.keys = new long[in.readInt()];
+            for (int i = 0; i < s.keys.length; i++) {
+                s.keys[i] = in.readLong();
+            }
+            return s;
+        } catch (IOException e) {
+            Log.w("MediaPlugin", "Ignoring unreadable change snapshot", e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot(Snapshot s) {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeUTF(s.id);
+            out.writeUTF(s.version);
+            out.writeLong(s.generation);
+            out.writeLong(s.maxModified);
+            out.writeLong(s.maxId);
+            out.writeInt(s.keys.length);
+            for (long key : s.keys) {
+                out.writeLong(key);
+            }
+        } catch (IOException e) {
+            Log.w("MediaPlugin", "Could not write change snapshot", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            tmp.delete();
+        }
+    }
+}
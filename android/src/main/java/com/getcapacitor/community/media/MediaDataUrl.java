@@ -0,0 +1,89 @@
+package com.getcapacitor.community.media;
+
+import android.util.Base64;
+import android.util.Base64InputStream;
+import java.io.InputStream;
+
+/**
+ * A base64 data URL whose payload is decoded as a stream straight from the string, so saving a large
+ * clip doesn't need a substring copy plus the decoded bytes on the heap.
+ */
+class MediaDataUrl {
+
+    final String mimeType;
+    private final String url;
+    private final int dataStart;
+
+    private MediaDataUrl(String mimeType, String url, int dataStart) {
+        this.mimeType = mimeType;
+        this.url = url;
+        this.dataStart = dataStart;
+    }
+
+    /**
+     * Parses the header of a `data:[mime][;params];base64,` URL.
+     *
+     * @throws IllegalArgumentException if the URL is not a base64 data URL
+     */
+    static MediaDataUrl parse(String url) {
+        int comma = url.indexOf(',');
+        if (!url.startsWith("data:") || comma < 0) {
+            throw new IllegalArgumentException("Not a data URL");
+        }
+
+        String header = url.substring("data:".length(), comma);
+        if (!header.endsWith(";base64")) {
+            throw new IllegalArgumentException("Data URL is not base64 encoded");
+        }
+
+        int semicolon = header.indexOf(';');
+        return new MediaDataUrl(header.substring(0, semicolon), url, comma + 1);
+    }
+
+    /**
+     * Returns a stream of the decoded payload. Decoding errors surface as IOExceptions while reading.
+     */
+    InputStream openStream() {
+        return new Base64InputStream(new AsciiInputStream(url, dataStart), Base64.DEFAULT);
+    }
+
+    /**
+     * Reads the chars of a string as single bytes. Base64 is plain ASCII, so no charset is needed.
+     */
+    private static class AsciiInputStream extends InputStream {
+
+        private final String source;
+        private int position;
+
+        AsciiInputStream(String source, int start) {
+            this.source = source;
+            this.position = start;
+        }
+
+        @Override
+        public int read() {
+            return position < source.length() ? source.charAt(position++) & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= source.length()) {
+                return -1;
+            }
+
+            int count = Math.min(length, source.length() - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) source.charAt(position++);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return source.length() - position;
+        }
+    }
+}
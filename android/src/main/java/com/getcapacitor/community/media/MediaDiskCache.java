@@ -0,0 +1,198 @@
+package com.getcapacitor.community.media;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-capped LRU cache of encoded media bytes, stored as one file per entry in a single directory.
+ *
+ * Entries are written to a temporary file and renamed into place, so a crash mid-write never leaves a
+ * truncated entry behind. Access order is persisted through the file modification time, which lets the
+ * LRU order survive app restarts.
+ */
+class MediaDiskCache {
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+
+    // File name -> length, in access order (eldest first)
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+
+    MediaDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached bytes for a key, or null on a miss.
+     */
+    byte[] get(String key) {
+        File file = getFile(key);
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            return readFully(file);
+        } catch (IOException e) {
+            Log.w("MediaPlugin", "Dropping unreadable cache entry " + key, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file backing a key, or null on a miss. Counts as an access for LRU purposes.
+     */
+    synchronized File getFile(String key) {
+        ensureLoaded();
+
+        if (entries.get(key) == null) {
+            return null;
+        }
+
+        File file = new File(directory, key);
+        if (!file.isFile() || file.length() == 0) {
+            remove(key);
+            return null;
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    void put(String key, byte[] data) {
+        try {
+            File tmp = newTempFile(key);
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                os.write(data);
+            } finally {
+                os.close();
+            }
+            commit(key, tmp);
+        } catch (IOException e) {
+            Log.w("MediaPlugin", "Could not write cache entry " + key, e);
+        }
+    }
+
+    /**
+     * Creates a temporary file in the cache directory for the caller to write an entry into. The entry
+     * only becomes visible once it is passed to {@link #commit(String, File)}.
+     */
+    File newTempFile(String key) throws IOException {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        return File.createTempFile(key, TMP_SUFFIX, directory);
+    }
+
+    /**
+     * Atomically moves a fully written temporary file into place as the entry for a key.
+     */
+    synchronized File commit(String key, File tmp) throws IOException {
+        ensureLoaded();
+
+        File file = new File(directory, key);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not move cache entry into place: " + key);
+        }
+
+        Long previous = entries.put(key, file.length());
+        if (previous != null) {
+            size -= previous;
+        }
+        size += file.length();
+        trimToSize(maxBytes);
+        return file;
+    }
+
+    synchronized void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        new File(directory, key).delete();
+    }
+
+    synchronized void trimToSize(long targetBytes) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > targetBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    synchronized long size() {
+        ensureLoaded();
+        return size;
+    }
+
+    long maxSize() {
+        return maxBytes;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w("MediaPlugin", "Could not create cache directory " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Rebuild the LRU order from the modification times written on access
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // Left over from a write that never completed
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+        trimToSize(maxBytes);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream is = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = is.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of cache entry " + file.getName());
+                }
+                offset += read;
+            }
+        } finally {
+            is.close();
+        }
+        return data;
+    }
+}
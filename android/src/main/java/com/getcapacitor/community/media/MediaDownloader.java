@@ -0,0 +1,288 @@
+package com.getcapacitor.community.media;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RejectedExecutionException;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads remote media to files through a shared {@link OkHttpClient}, streaming the body through
+ * a fixed-size buffer so memory use doesn't depend on the file size.
+ *
+ * Downloads go to a partial file that outlives failed attempts. Retries, and later downloads of the
+ * same URL, resume it with a Range request guarded by If-Range, so a dropped connection only costs
+ * the missing bytes. If the resource changed in the meantime the server answers with the full body
+ * and the partial file is started over. Retries are handed to a {@link RetryScheduler} after their
+ * backoff delay, so no thread is held while waiting and the outcome is reported to a callback.
+ *
+ * Has no Android dependencies, so it can be exercised against a local mock HTTP server.
+ */
+class MediaDownloader {
+
+    interface ProgressListener {
+        /**
+         * @param contentLength the total size, or -1 if the server didn't send it
+         */
+        void onProgress(long bytesWritten, long contentLength);
+    }
+
+    interface Callback {
+        /**
+         * @param mimeType the MIME type from the Content-Type header without parameters, or null
+         */
+        void onComplete(String mimeType);
+
+        /**
+         * Called once the retries are exhausted or the server answered with a final error.
+         */
+        void onFailure(IOException e);
+    }
+
+    interface RetryScheduler {
+        /**
+         * Runs a retry once the delay has passed.
+         */
+        void schedule(Runnable retry, long delayMs);
+    }
+
+    /**
+     * Exponential backoff between attempts: baseDelayMs, doubled per attempt, capped at maxDelayMs.
+     */
+    static class RetryPolicy {
+
+        final int maxRetries;
+        final long baseDelayMs;
+        final long maxDelayMs;
+
+        RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs) {
+            this.maxRetries = maxRetries;
+            this.baseDelayMs = baseDelayMs;
+            this.maxDelayMs = maxDelayMs;
+        }
+
+        long delayMs(int retry) {
+            long delay = baseDelayMs << Math.min(retry, 30);
+            return delay < 0 ? maxDelayMs : Math.min(delay, maxDelayMs);
+        }
+    }
+
+    /**
+     * An HTTP error status. 408, 429 and 5xx are worth retrying, everything else is final.
+     */
+    static class HttpStatusException extends IOException {
+
+        final int code;
+
+        HttpStatusException(int code) {
+            super("Unexpected HTTP status " + code);
+            this.code = code;
+        }
+
+        boolean isRetryable() {
+            return code == 408 || code == 429 || code >= 500;
+        }
+    }
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    // Minimum time between progress callbacks, so listeners aren't called once per buffer
+    static final long PROGRESS_INTERVAL_MS = 200;
+
+    private final OkHttpClient client;
+    private final RetryPolicy retryPolicy;
+    private final RetryScheduler retryScheduler;
+
+    MediaDownloader(OkHttpClient client, RetryPolicy retryPolicy, RetryScheduler retryScheduler) {
+        this.client = client;
+        this.retryPolicy = retryPolicy;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * Returns a file name for the partial download of a URL, stable across app restarts.
+     */
+    static String partialFileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("download-");
+            for (int i = 0; i < 16; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.append(".part").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Downloads a URL into a partial file, resuming what a previous attempt left in it.
+     *
+     * The first attempt runs on the calling thread and retries on the retry scheduler's. The callback
+     * is called once, on the thread of the last attempt.
+     *
+     * @param partFile    receives the body; kept on failure so a later call can resume it
+     * @param metaFile    holds the validator (strong ETag or Last-Modified) the partial file belongs to
+     */
+    void download(String url, File partFile, File metaFile, ProgressListener listener, Callback callback) {
+        run(url, partFile, metaFile, listener, callback, 0);
+    }
+
+    private void run(String url, File partFile, File metaFile, ProgressListener listener, Callback callback, int attempt) {
+        String mimeType;
+        try {
+            mimeType = attempt(url, partFile, metaFile, listener);
+        } catch (IOException e) {
+            boolean retryable = !(e instanceof HttpStatusException) || ((HttpStatusException) e).isRetryable();
+            if (!retryable || attempt >= retryPolicy.maxRetries) {
+                callback.onFailure(e);
+                return;
+            }
+            try {
+                retryScheduler.schedule(() -> run(url, partFile, metaFile, listener, callback, attempt + 1), retryPolicy.delayMs(attempt));
+            } catch (RejectedExecutionException rejected) {
+                callback.onFailure(e);
+            }
+            return;
+        }
+        callback.onComplete(mimeType);
+    }
+
+    private String attempt(String url, File partFile, File metaFile, ProgressListener listener) throws IOException {
+        long existing = partFile.isFile() ? partFile.length() : 0;
+        String validator = existing > 0 ? readValidator(metaFile) : null;
+
+        // Without this OkHttp asks for gzip and unzips transparently, so the partial file would no longer
+        // line up with the byte offsets a resumed range refers to
+        Request.Builder builder = new Request.Builder().url(url).header("Accept-Encoding", "identity");
+        if (validator != null) {
+            builder.header("Range", "bytes=" + existing + "-");
+            builder.header("If-Range", validator);
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            ResponseBody body = response.body();
+            if (response.code() == 416 && validator != null) {
+                // The partial file doesn't fit the resource (anymore); start over on the next attempt
+                partFile.delete();
+                metaFile.delete();
+                throw new IOException("Requested range not satisfiable");
+            }
+            if (!response.isSuccessful() || body == null) {
+                throw new HttpStatusException(response.code());
+            }
+
+            boolean resumed = response.code() == 206;
+            if (resumed && validator == null) {
+                throw new IOException("Unexpected partial response");
+            }
+            long total;
+            if (resumed) {
+                long[] range = parseContentRange(response.header("Content-Range"));
+                String etag = response.header("ETag");
+                boolean sameEntity = !validator.startsWith("\"") || etag == null || validator.equals(etag);
+                if (range == null || range[0] != existing || !sameEntity) {
+                    partFile.delete();
+                    metaFile.delete();
+                    throw new IOException("Server resumed at an unexpected position");
+                }
+                total = range[1];
+            } else {
+                // A full body: the resource changed or the server doesn't support ranges
+                existing = 0;
+                total = body.contentLength();
+                writeValidator(metaFile, response.header("ETag"), response.header("Last-Modified"));
+            }
+
+            long written = existing;
+            long lastReport = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(partFile, resumed)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    written += read;
+
+                    long now = System.currentTimeMillis();
+                    if (listener != null && now - lastReport >= PROGRESS_INTERVAL_MS) {
+                        lastReport = now;
+                        listener.onProgress(written, total);
+                    }
+                }
+            }
+
+            if (total >= 0 && written != total) {
+                throw new IOException("Download ended after " + written + " of " + total + " bytes");
+            }
+            if (listener != null) {
+                listener.onProgress(written, total);
+            }
+
+            MediaType mt = body.contentType();
+            return mt != null ? mt.type() + "/" + mt.subtype() : null;
+        }
+    }
+
+    /**
+     * Parses "bytes start-end/total" into {start, total}, with total -1 if unknown.
+     */
+    private static long[] parseContentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            String spec = header.substring("bytes ".length()).trim();
+            int dash = spec.indexOf('-');
+            int slash = spec.indexOf('/');
+            long start = Long.parseLong(spec.substring(0, dash).trim());
+            String total = spec.substring(slash + 1).trim();
+            return new long[] { start, "*".equals(total) ? -1 : Long.parseLong(total) };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores what a resumed request has to be validated against. Weak ETags can't be used in If-Range,
+     * so those fall back to Last-Modified; without either the download can't be resumed.
+     */
+    private static void writeValidator(File metaFile, String etag, String lastModified) throws IOException {
+        String validator = etag != null && !etag.startsWith("W/") ? etag : lastModified;
+        if (validator == null) {
+            metaFile.delete();
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(metaFile)) {
+            out.write(validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String readValidator(File metaFile) {
+        if (!metaFile.isFile() || metaFile.length() == 0 || metaFile.length() > 1024) {
+            return null;
+        }
+        byte[] data = new byte[(int) metaFile.length()];
+        try (InputStream in = new FileInputStream(metaFile)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    return null;
+                }
+                offset += read;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
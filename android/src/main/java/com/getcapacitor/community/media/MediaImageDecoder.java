@@ -0,0 +1,127 @@
+package com.getcapacitor.community.media;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Size;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes images straight to the size they are needed at, so peak memory follows the output size
+ * instead of the source size. A 200 MP photo decoded at full resolution needs 800 MB.
+ */
+class MediaImageDecoder {
+
+    private MediaImageDecoder() {}
+
+    /**
+     * Decodes an image scaled down to fit within maxWidth x maxHeight, keeping its aspect ratio.
+     * Images that already fit are decoded at their original size; they are never scaled up.
+     *
+     * @return the bitmap, or null if the image could not be decoded
+     */
+    static Bitmap decode(ContentResolver resolver, Uri uri, int maxWidth, int maxHeight) throws IOException {
+        return decode(resolver, uri, maxWidth, maxHeight, null);
+    }
+
+    /**
+     * Like {@link #decode(ContentResolver, Uri, int, int)}, but below API 28 the pixels are decoded into
+     * a bitmap from the pool when one is large enough. Results are mutable, so callers can hand them
+     * to the pool once done with them.
+     */
+    static Bitmap decode(ContentResolver resolver, Uri uri, int maxWidth, int maxHeight, MediaBitmapPool pool) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            ImageDecoder.Source source = ImageDecoder.createSource(resolver, uri);
+            return ImageDecoder.decodeBitmap(
+                source,
+                (decoder, info, src) -> {
+                    // Software bitmaps can be compressed and recycled like the legacy path's
+                    decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                    Size target = fit(info.getSize().getWidth(), info.getSize().getHeight(), maxWidth, maxHeight);
+                    if (target != null) {
+                        decoder.setTargetSize(target.getWidth(), target.getHeight());
+                    }
+                }
+            );
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            BitmapFactory.decodeStream(is, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sourceWidth = options.outWidth;
+        int sourceHeight = options.outHeight;
+        Size target = fit(sourceWidth, sourceHeight, maxWidth, maxHeight);
+
+        options = new BitmapFactory.Options();
+        if (target != null) {
+            // Subsample by the largest power of two that stays at or above the target, then let the
+            // density scaling cover the rest in the same decode pass
+            int sampleSize = 1;
+            while (sourceWidth / (sampleSize * 2) >= target.getWidth()) {
+                sampleSize *= 2;
+            }
+            options.inSampleSize = sampleSize;
+            options.inScaled = true;
+            options.inDensity = sourceWidth;
+            options.inTargetDensity = target.getWidth() * sampleSize;
+        }
+        if (pool == null) {
+            return decodeStream(resolver, uri, options);
+        }
+
+        // The density scaling may round up by a pixel, so ask for one extra row and column
+        int width = target != null ? target.getWidth() + 1 : sourceWidth;
+        int height = target != null ? target.getHeight() + 1 : sourceHeight;
+        options.inMutable = true;
+        Bitmap pooled = pool.get(width * height * 4);
+        options.inBitmap = pooled;
+        if (pooled == null) {
+            return decodeStream(resolver, uri, options);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(resolver, uri, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap can't take this image after all
+            pooled.recycle();
+            options.inBitmap = null;
+            return decodeStream(resolver, uri, options);
+        } catch (IOException e) {
+            pool.put(pooled);
+            throw e;
+        }
+        // A failed decode, or one that allocated a new bitmap, leaves the pooled bitmap unused
+        if (bitmap != pooled) {
+            pool.put(pooled);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream is = resolver.openInputStream(uri)) {
+            return BitmapFactory.decodeStream(is, null, options);
+        }
+    }
+
+    /**
+     * Returns the size that fits width x height within the bounds, or null if it already fits.
+     */
+    private static Size fit(int width, int height, int maxWidth, int maxHeight) {
+        if (width <= maxWidth && height <= maxHeight) {
+            return null;
+        }
+        float scale = Math.min((float) maxWidth / width, (float) maxHeight / height);
+        return new Size(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+    }
+}
@@ -0,0 +1,174 @@
+package com.getcapacitor.community.media;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Opaque keyset pagination token for getMedias.
+ *
+ * A token records the sort keys of a query together with the sort values and _ID of the last row
+ * returned. The next page is then selected with a WHERE clause that starts right after that row, so
+ * the cost of a page doesn't grow with its depth and rows inserted in the meantime don't shift it.
+ */
+class MediaPageToken {
+
+    static class SortKey {
+
+        final String column;
+        final boolean ascending;
+
+        SortKey(String column, boolean ascending) {
+            this.column = column;
+            this.ascending = ascending;
+        }
+    }
+
+    private final List<SortKey> sortKeys;
+    // Sort values of the last row as read from the cursor; null for SQL NULL
+    private final String[] values;
+    private final long lastId;
+
+    private MediaPageToken(List<SortKey> sortKeys, String[] values, long lastId) {
+        this.sortKeys = sortKeys;
+        this.values = values;
+        this.lastId = lastId;
+    }
+
+    /**
+     * Builds the ORDER BY clause for the sort keys, with _ID as the final tie-breaker so the order is
+     * total and a token can point at an exact position.
+     */
+    static String sortOrder(List<SortKey> sortKeys) {
+        StringBuilder sb = new StringBuilder();
+        for (SortKey key : sortKeys) {
+            sb.append(key.column).append(key.ascending ? " ASC, " : " DESC, ");
+        }
+        sb.append(MediaStore.MediaColumns._ID).append(tieBreakAscending(sortKeys) ? " ASC" : " DESC");
+        return sb.toString();
+    }
+
+    /**
+     * Creates a token pointing after the row the cursor is currently positioned on.
+     */
+    static MediaPageToken fromRow(List<SortKey> sortKeys, Cursor cursor) {
+        String[] values = new String[sortKeys.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = cursor.getString(cursor.getColumnIndexOrThrow(sortKeys.get(i).column));
+        }
+        long id = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID));
+        return new MediaPageToken(sortKeys, values, id);
+    }
+
+    static MediaPageToken decode(String token) {
+        try {
+            String json = new String(Base64.decode(token, Base64.URL_SAFE), StandardCharsets.UTF_8);
+            JSONObject obj = new JSONObject(json);
+            JSONArray keys = obj.getJSONArray("k");
+            JSONArray values = obj.getJSONArray("v");
+
+            List<SortKey> sortKeys = new ArrayList<>();
+            String[] sortValues = new String[keys.length()];
+            for (int i = 0; i < keys.length(); i++) {
+                JSONObject key = keys.getJSONObject(i);
+                sortKeys.add(new SortKey(key.getString("c"), key.getBoolean("a")));
+                sortValues[i] = values.isNull(i) ? null : values.getString(i);
+            }
+            return new MediaPageToken(sortKeys, sortValues, obj.getLong("id"));
+        } catch (JSONException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+    }
+
+    String encode() {
+        try {
+            JSONArray keys = new JSONArray();
+            JSONArray sortValues = new JSONArray();
+            for (int i = 0; i < sortKeys.size(); i++) {
+                JSONObject key = new JSONObject();
+                key.put("c", sortKeys.get(i).column);
+                key.put("a", sortKeys.get(i).ascending);
+                keys.put(key);
+                sortValues.put(values[i] != null ? values[i] : JSONObject.NULL);
+            }
+
+            JSONObject obj = new JSONObject();
+            obj.put("k", keys);
+            obj.put("v", sortValues);
+            obj.put("id", lastId);
+            byte[] json = obj.toString().getBytes(StandardCharsets.UTF_8);
+            return Base64.encodeToString(json, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether the token was issued for a query with the same sort order.
+     */
+    boolean matches(List<SortKey> other) {
+        if (other.size() != sortKeys.size()) {
+            return false;
+        }
+        for (int i = 0; i < other.size(); i++) {
+            if (!other.get(i).column.equals(sortKeys.get(i).column) || other.get(i).ascending != sortKeys.get(i).ascending) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the clause selecting all rows after the token's row to a selection.
+     *
+     * For sort keys k1..kn this expands the row-value comparison (k1, .., kn, _id) > (v1, .., vn, id)
+     * into (k1 after v1) OR (k1 = v1 AND k2 after v2) OR ... with SQLite's NULL ordering spelled out,
+     * since NULL sorts first ascending and last descending but never compares.
+     */
+    void appendSelection(List<String> clauses, List<String> args) {
+        List<String> disjuncts = new ArrayList<>();
+        StringBuilder prefix = new StringBuilder();
+        List<String> prefixArgs = new ArrayList<>();
+
+        for (int i = 0; i < sortKeys.size(); i++) {
+            SortKey key = sortKeys.get(i);
+            String value = values[i];
+
+            String after = null;
+            if (key.ascending) {
+                after = value == null ? key.column + " IS NOT NULL" : key.column + " > ?";
+            } else if (value != null) {
+                after = "(" + key.column + " < ? OR " + key.column + " IS NULL)";
+            }
+            if (after != null) {
+                disjuncts.add("(" + prefix + after + ")");
+                args.addAll(prefixArgs);
+                if (value != null) {
+                    args.add(value);
+                }
+            }
+
+            prefix.append(value == null ? key.column + " IS NULL" : key.column + " = ?").append(" AND ");
+            if (value != null) {
+                prefixArgs.add(value);
+            }
+        }
+
+        String idOp = tieBreakAscending(sortKeys) ? " > ?" : " < ?";
+        disjuncts.add("(" + prefix + MediaStore.MediaColumns._ID + idOp + ")");
+        args.addAll(prefixArgs);
+        args.add(String.valueOf(lastId));
+
+        clauses.add("(" + String.join(" OR ", disjuncts) + ")");
+    }
+
+    private static boolean tieBreakAscending(List<SortKey> sortKeys) {
+        return !sortKeys.isEmpty() && sortKeys.get(0).ascending;
+    }
+}
@@ -1,21 +1,36 @@
 package com.getcapacitor.community.media;
 
 import android.Manifest;
+import android.app.ActivityManager;
 import android.app.DownloadManager;
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.Configuration;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.util.Base64;
+import android.util.Base64OutputStream;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.Size;
 import android.webkit.MimeTypeMap;
+import com.getcapacitor.Bridge;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Logger;
@@ -26,29 +41,37 @@ import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import okhttp3.MediaType;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @CapacitorPlugin(
@@ -68,6 +91,7 @@ import org.json.JSONObject;
 public class MediaPlugin extends Plugin {
 
     private static final String PERMISSION_DENIED_ERROR = "Unable to access media, user denied permission request";
+    private static final String INVALID_PRIORITY_ERROR = "Invalid priority parameter (must be interactive or prefetch)";
 
     private static final int API_LEVEL_29 = 29;
     private static final int API_LEVEL_33 = 33;
@@ -77,6 +101,227 @@ public class MediaPlugin extends Plugin {
     public static final String EC_ARG_ERROR = "argumentError";
     public static final String EC_DOWNLOAD_ERROR = "downloadError";
     public static final String EC_FS_ERROR = "filesystemError";
+    public static final String EC_CANCELLED = "cancelled";
+
+    // Thumbnail decoding is CPU bound, so the interactive lane is sized to the core count; this also
+    // caps peak memory to one in-flight decode per thread
+    private static final int THUMBNAIL_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // Prefetching must leave room for what becomes visible meanwhile
+    private static final int PREFETCH_THREADS = Math.max(1, THUMBNAIL_THREADS / 2);
+
+    // Saving is network and disk bound, so a few items in flight are enough to keep both busy
+    private static final int SAVE_THREADS = 4;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // One pooled encode buffer and bitmap per decode thread, the bitmaps at the default thumbnail size
+    private static final int ENCODE_BUFFER_COUNT = THUMBNAIL_THREADS + PREFETCH_THREADS;
+    private static final int ENCODE_BUFFER_MAX_SIZE = 1024 * 1024;
+    private static final long BITMAP_POOL_SIZE = (THUMBNAIL_THREADS + PREFETCH_THREADS) * 512L * 384L * 4L;
+
+    private static final byte[] JPEG_DATA_URL_PREFIX = "data:image/jpeg;base64,".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_SELECTION_ARGS = 500;
+    private static final int STREAM_BATCH_SIZE = 50;
+
+    private static final int MEMORY_PRESSURE_NONE = 0;
+    private static final int MEMORY_PRESSURE_MODERATE = 1;
+    private static final int MEMORY_PRESSURE_CRITICAL = 2;
+    // Android doesn't report the end of memory pressure, so normal sizes return once it has been
+    // quiet for this long
+    private static final long MEMORY_PRESSURE_RESTORE_DELAY_MS = 30 * 1000;
+    // Thumbnails decoded per round and streamed per event while memory is low
+    private static final int MEMORY_PRESSURE_BATCH_SIZE = 10;
+    private static final int COUNT_CACHE_SIZE = 32;
+
+    public static final String EVENT_MEDIA_ITEMS = "mediaItems";
+    public static final String EVENT_MEDIA_COMPLETE = "mediaComplete";
+    public static final String EVENT_DOWNLOAD_PROGRESS = "downloadProgress";
+
+    // Disk cache cap for encoded thumbnails, overridable with the `thumbnailDiskCacheSizeMb` plugin config
+    private static final int DEFAULT_THUMBNAIL_DISK_CACHE_MB = 64;
+    // Disk cache cap for getMediaByIdentifier results, overridable with the `imageDiskCacheSizeMb` plugin config
+    private static final int DEFAULT_IMAGE_DISK_CACHE_MB = 128;
+    // Limits for partial downloads and uncached image results, overridable with the
+    // `tempFilesMaxSizeMb` and `tempFilesMaxAgeHours` plugin config
+    private static final int DEFAULT_TEMP_FILES_MAX_MB = 256;
+    private static final int DEFAULT_TEMP_FILES_MAX_AGE_HOURS = 24;
+    // Retries of failed downloads with exponential backoff, overridable with the `downloadMaxRetries`,
+    // `downloadRetryBaseDelayMs` and `downloadRetryMaxDelayMs` plugin config
+    private static final int DEFAULT_DOWNLOAD_MAX_RETRIES = 3;
+    private static final int DEFAULT_DOWNLOAD_RETRY_BASE_DELAY_MS = 1000;
+    private static final int DEFAULT_DOWNLOAD_RETRY_MAX_DELAY_MS = 30000;
+
+    // All work runs here, off the plugin call thread, so one call can't hold up the others
+    private MediaScheduler scheduler;
+    private MediaDiskCache thumbnailDiskCache;
+    private MediaDiskCache imageDiskCache;
+    private LruCache<String, byte[]> thumbnailMemoryCache;
+    private int thumbnailMemoryCacheSize;
+    private final MediaBufferPool encodeBuffers = new MediaBufferPool(ENCODE_BUFFER_COUNT, ENCODE_BUFFER_MAX_SIZE);
+    private final MediaBitmapPool bitmapPool = new MediaBitmapPool(BITMAP_POOL_SIZE);
+    private final LruCache<String, Integer> countCache = new LruCache<>(COUNT_CACHE_SIZE);
+    // Duplicate requests arriving while a thumbnail or image is being generated wait for that one
+    private final MediaSingleFlight<byte[]> thumbnailFlights = new MediaSingleFlight<>();
+    private final MediaSingleFlight<EncodedImage> imageFlights = new MediaSingleFlight<>();
+    private MediaStoreObserver mediaStoreObserver;
+    private MediaAlbumIndex albumIndex;
+    private MediaChangeTracker changeTracker;
+    private MediaTempFileManager tempFiles;
+    // One client for all downloads, so connections and the dispatcher are shared
+    private MediaDownloader downloader;
+    // Requests that can still be cancelled, by the requestId the caller passed
+    private final Map<String, CancellationSignal> activeRequests = new ConcurrentHashMap<>();
+
+    private int memoryPressure = MEMORY_PRESSURE_NONE;
+    // Most thumbnails a page has in flight at once; lowered while memory is low
+    private volatile int thumbnailBatchSize = Integer.MAX_VALUE;
+    private final Handler memoryPressureHandler = new Handler(Looper.getMainLooper());
+    private final Runnable memoryPressureRestore = () -> setMemoryPressure(MEMORY_PRESSURE_NONE);
+
+    private final ComponentCallbacks2 componentCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                // Leaving the foreground is a good moment to drop what piled up
+                scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> tempFiles.trim());
+            }
+
+            if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+                onMemoryPressure(MEMORY_PRESSURE_CRITICAL);
+            } else if (level != TRIM_MEMORY_UI_HIDDEN) {
+                // RUNNING_MODERATE, RUNNING_LOW, or BACKGROUND once the app is on the LRU list
+                onMemoryPressure(MEMORY_PRESSURE_MODERATE);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> tempFiles.trim());
+            onMemoryPressure(MEMORY_PRESSURE_CRITICAL);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {}
+    };
+
+    @Override
+    public void load() {
+        scheduler = new MediaScheduler(THUMBNAIL_THREADS, PREFETCH_THREADS, SAVE_THREADS);
+        mediaStoreObserver = MediaStoreObserver.register(getContext());
+        albumIndex = new MediaAlbumIndex(getContext(), new File(getContext().getCacheDir(), "media-albums.json"));
+        File changeSnapshot = new File(getContext().getFilesDir(), "media-changes.snapshot");
+        changeTracker = new MediaChangeTracker(getContext(), changeSnapshot, mediaStoreObserver);
+
+        int diskCacheMb = getConfig().getInt("thumbnailDiskCacheSizeMb", DEFAULT_THUMBNAIL_DISK_CACHE_MB);
+        if (diskCacheMb > 0) {
+            File cacheDir = new File(getContext().getCacheDir(), "media-thumbnails");
+            thumbnailDiskCache = new MediaDiskCache(cacheDir, diskCacheMb * 1024L * 1024L);
+        }
+
+        int imageCacheMb = getConfig().getInt("imageDiskCacheSizeMb", DEFAULT_IMAGE_DISK_CACHE_MB);
+        if (imageCacheMb > 0) {
+            File cacheDir = new File(getContext().getCacheDir(), "media-images");
+            imageDiskCache = new MediaDiskCache(cacheDir, imageCacheMb * 1024L * 1024L);
+        }
+
+        int tempFilesMb = getConfig().getInt("tempFilesMaxSizeMb", DEFAULT_TEMP_FILES_MAX_MB);
+        int tempFilesHours = getConfig().getInt("tempFilesMaxAgeHours", DEFAULT_TEMP_FILES_MAX_AGE_HOURS);
+        tempFiles =
+            new MediaTempFileManager(
+                new File(getContext().getCacheDir(), "media-tmp"),
+                tempFilesMb * 1024L * 1024L,
+                tempFilesHours * 60L * 60L * 1000L
+            );
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> {
+            File legacyMarker = new File(getContext().getFilesDir(), "media-legacy-temp-files-removed");
+            MediaTempFileManager.removeLegacyFiles(getContext().getCacheDir(), legacyMarker);
+            tempFiles.trim();
+        });
+
+        MediaDownloader.RetryPolicy retryPolicy = new MediaDownloader.RetryPolicy(
+            getConfig().getInt("downloadMaxRetries", DEFAULT_DOWNLOAD_MAX_RETRIES),
+            getConfig().getInt("downloadRetryBaseDelayMs", DEFAULT_DOWNLOAD_RETRY_BASE_DELAY_MS),
+            getConfig().getInt("downloadRetryMaxDelayMs", DEFAULT_DOWNLOAD_RETRY_MAX_DELAY_MS)
+        );
+        downloader =
+            new MediaDownloader(
+                new OkHttpClient(),
+                retryPolicy,
+                (retry, delayMs) -> scheduler.schedule(MediaScheduler.Lane.BACKGROUND, retry, delayMs)
+            );
+
+        // Grid views keep re-requesting the same few hundred thumbnails, so keep the encoded bytes
+        // in memory too. An eighth of the per-app heap is the usual budget for image caches.
+        ActivityManager activityManager = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        thumbnailMemoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024 / 8;
+        thumbnailMemoryCache =
+            new LruCache<String, byte[]>(thumbnailMemoryCacheSize) {
+                @Override
+                protected int sizeOf(String key, byte[] value) {
+                    return value.length;
+                }
+            };
+
+        // Registered last, since the callbacks touch the caches
+        getContext().registerComponentCallbacks(componentCallbacks);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        // Stop memory signals first, so none of them changes the limits of a scheduler shutting down
+        getContext().unregisterComponentCallbacks(componentCallbacks);
+        memoryPressureHandler.removeCallbacks(memoryPressureRestore);
+        scheduler.shutdownNow();
+        mediaStoreObserver.unregister();
+    }
+
+    /**
+     * Handles a memory signal: applies the pressure level unless a higher one is in effect, and
+     * schedules the restore once the signals stop.
+     */
+    private synchronized void onMemoryPressure(int pressure) {
+        setMemoryPressure(Math.max(pressure, memoryPressure));
+        memoryPressureHandler.removeCallbacks(memoryPressureRestore);
+        memoryPressureHandler.postDelayed(memoryPressureRestore, MEMORY_PRESSURE_RESTORE_DELAY_MS);
+    }
+
+    /**
+     * Sizes the in-memory caches, pools, decode concurrency and thumbnail batches for a memory
+     * pressure level. Under pressure requests get slower instead of adding to the heap, so the
+     * process isn't killed in the middle of a page.
+     */
+    private synchronized void setMemoryPressure(int pressure) {
+        if (pressure != memoryPressure) {
+            Log.d("MediaPlugin", "Memory pressure changed from " + memoryPressure + " to " + pressure);
+        }
+        memoryPressure = pressure;
+
+        switch (pressure) {
+            case MEMORY_PRESSURE_CRITICAL -> {
+                thumbnailMemoryCache.evictAll();
+                thumbnailMemoryCache.resize(Math.max(1, thumbnailMemoryCacheSize / 8));
+                encodeBuffers.resize(1);
+                bitmapPool.resize(0);
+                scheduler.setLimits(1, 1, 1);
+                thumbnailBatchSize = MEMORY_PRESSURE_BATCH_SIZE;
+            }
+            case MEMORY_PRESSURE_MODERATE -> {
+                thumbnailMemoryCache.resize(thumbnailMemoryCacheSize / 2);
+                encodeBuffers.resize(Math.max(1, THUMBNAIL_THREADS / 2));
+                bitmapPool.resize(BITMAP_POOL_SIZE / 4);
+                scheduler.setLimits(Math.max(1, THUMBNAIL_THREADS / 2), 1, Math.max(1, SAVE_THREADS / 2));
+                thumbnailBatchSize = MEMORY_PRESSURE_BATCH_SIZE;
+            }
+            default -> {
+                thumbnailMemoryCache.resize(thumbnailMemoryCacheSize);
+                encodeBuffers.resize(ENCODE_BUFFER_COUNT);
+                bitmapPool.resize(BITMAP_POOL_SIZE);
+                scheduler.setLimits(THUMBNAIL_THREADS, PREFETCH_THREADS, SAVE_THREADS);
+                thumbnailBatchSize = Integer.MAX_VALUE;
+            }
+        }
+    }
 
     @PluginMethod
     public void getPermissionStatus(PluginCall call) {
@@ -165,6 +410,36 @@ public class MediaPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void getMediasStream(PluginCall call) {
+        if (isStoragePermissionGranted()) {
+            _getMediasStream(call);
+        } else {
+            this.bridge.saveCall(call);
+            requestAllPermissions(call, "permissionCallback");
+        }
+    }
+
+    @PluginMethod
+    public void getThumbnails(PluginCall call) {
+        if (isStoragePermissionGranted()) {
+            _getThumbnails(call);
+        } else {
+            this.bridge.saveCall(call);
+            requestAllPermissions(call, "permissionCallback");
+        }
+    }
+
+    @PluginMethod
+    public void getChanges(PluginCall call) {
+        if (isStoragePermissionGranted()) {
+            _getChanges(call);
+        } else {
+            this.bridge.saveCall(call);
+            requestAllPermissions(call, "permissionCallback");
+        }
+    }
+
     @PluginMethod
     public void getMediaByIdentifier(PluginCall call) {
         if (isStoragePermissionGranted()) {
@@ -175,6 +450,24 @@ public class MediaPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String requestId = call.getString("requestId");
+        if (requestId == null) {
+            call.reject("Must provide a requestId", EC_ARG_ERROR);
+            return;
+        }
+
+        CancellationSignal signal = activeRequests.remove(requestId);
+        if (signal != null) {
+            signal.cancel();
+        }
+
+        JSObject result = new JSObject();
+        result.put("cancelled", signal != null);
+        call.resolve(result);
+    }
+
     @PluginMethod
     public void getAlbums(PluginCall call) {
         Log.d("DEBUG LOG", "GET ALBUMS");
@@ -215,6 +508,16 @@ public class MediaPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void saveMedias(PluginCall call) {
+        if (isStoragePermissionGranted()) {
+            _saveMedias(call);
+        } else {
+            this.bridge.saveCall(call);
+            requestAllPermissions(call, "permissionCallback");
+        }
+    }
+
     @PluginMethod
     public void createAlbum(PluginCall call) {
         Log.d("DEBUG LOG", "CREATE ALBUM");
@@ -238,9 +541,13 @@ public class MediaPlugin extends Plugin {
 
         switch (call.getMethodName()) {
             case "getMedias" -> _getMedias(call);
+            case "getMediasStream" -> _getMediasStream(call);
+            case "getThumbnails" -> _getThumbnails(call);
+            case "getChanges" -> _getChanges(call);
             case "getMediaByIdentifier" -> _getMediaByIdentifier(call);
             case "getAlbums" -> _getAlbums(call);
             case "savePhoto", "saveVideo" -> _saveMedia(call);
+            case "saveMedias" -> _saveMedias(call);
             case "createAlbum" -> _createAlbum(call);
         }
     }
@@ -265,57 +572,68 @@ public class MediaPlugin extends Plugin {
     private void _getAlbums(PluginCall call) {
         Log.d("DEBUG LOG", "___GET ALBUMS");
 
+        // An unchanged library is answered from the in-memory index. Checking or building the index
+        // is library indexing, so it waits in the background lane
+        String generation = mediaStoreObserver.getGeneration();
+        List<MediaAlbumIndex.Album> current = albumIndex.getIfCurrent(generation);
+        if (current != null) {
+            resolveAlbums(call, current);
+            return;
+        }
+
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> {
+            List<MediaAlbumIndex.Album> indexed;
+            try {
+                indexed = albumIndex.getAlbums(generation);
+            } catch (Exception e) {
+                Log.e("MediaPlugin", "Error querying albums", e);
+                call.reject("Error querying albums: " + e.getMessage());
+                return;
+            }
+            resolveAlbums(call, indexed);
+        });
+    }
+
+    private void resolveAlbums(PluginCall call, List<MediaAlbumIndex.Album> indexed) {
         JSObject response = new JSObject();
         JSArray albums = new JSArray();
-        Set<String> bucketIds = new HashSet<String>();
         Set<String> identifiers = new HashSet<String>();
 
-        String[] projection = new String[] {
-            MediaStore.MediaColumns.BUCKET_DISPLAY_NAME,
-            MediaStore.MediaColumns.BUCKET_ID,
-            MediaStore.MediaColumns.DATA
-        };
-        Cursor[] curs = {
-            getActivity().getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, projection, null, null, null),
-            getActivity().getContentResolver().query(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, projection, null, null, null)
-        };
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        for (MediaAlbumIndex.Album indexedAlbum : indexed) {
+            if (indexedAlbum.identifier == null || identifiers.contains(indexedAlbum.identifier)) {
+                continue;
+            }
 
-        for (Cursor cur : curs) {
-            while (cur.moveToNext()) {
-                String albumName = cur.getString((Math.max(0, cur.getColumnIndex(MediaStore.MediaColumns.BUCKET_DISPLAY_NAME))));
-                String bucketId = cur.getString((Math.max(0, cur.getColumnIndex(MediaStore.MediaColumns.BUCKET_ID))));
+            JSObject album = new JSObject();
+            album.put("name", indexedAlbum.name);
+            album.put("identifier", indexedAlbum.identifier);
+            album.put("count", indexedAlbum.count);
+            album.put("coverIdentifier", indexedAlbum.coverIdentifier);
+            if (indexedAlbum.lastModified > 0) {
+                album.put("modificationDate", iso.format(new Date(indexedAlbum.lastModified * 1000)));
+            }
+            albums.put(album);
+            identifiers.add(indexedAlbum.identifier);
+        }
 
-                if (!bucketIds.contains(bucketId)) {
-                    String path = cur.getString((Math.max(0, cur.getColumnIndex(MediaStore.MediaColumns.DATA))));
-                    File fileForPath = new File(path);
+        // Albums created by this plugin show up before they contain any media
+        File[] subs = new File(_getAlbumsPath()).listFiles();
+        if (subs != null) {
+            for (File sub : subs) {
+                if (sub.isDirectory() && !identifiers.contains(sub.getAbsolutePath())) {
                     JSObject album = new JSObject();
 
-                    album.put("name", albumName);
-                    album.put("identifier", fileForPath.getParent());
+                    album.put("name", sub.getName());
+                    album.put("identifier", sub.getAbsolutePath());
+                    album.put("count", 0);
+                    identifiers.add(sub.getAbsolutePath());
                     albums.put(album);
-
-                    bucketIds.add(bucketId);
-                    identifiers.add(fileForPath.getParent());
                 }
             }
-
-            cur.close();
-        }
-
-        File albumPath = new File(_getAlbumsPath());
-        for (File sub : albumPath.listFiles()) {
-            if (sub.isDirectory() && !identifiers.contains(sub.getAbsolutePath())) {
-                JSObject album = new JSObject();
-
-                album.put("name", sub.getName());
-                album.put("identifier", sub.getAbsolutePath());
-                identifiers.add(sub.getAbsolutePath());
-                albums.put(album);
-            }
         }
 
         response.put("albums", albums);
-        Log.d("DEBUG LOG", String.valueOf(response));
         Log.d("DEBUG LOG", "___GET ALBUMS FINISHED");
 
         call.resolve(response);
@@ -324,6 +642,228 @@ public class MediaPlugin extends Plugin {
     private void _getMedias(PluginCall call) {
         Log.d("MediaPlugin", "___GET MEDIAS");
 
+        MediaScheduler.Lane lane = getLane(call);
+        if (lane == null) {
+            call.reject(INVALID_PRIORITY_ERROR, EC_ARG_ERROR);
+            return;
+        }
+
+        String requestId = call.getString("requestId");
+        CancellationSignal signal = startRequest(requestId);
+
+        // Waits for the thumbnails generated in the lane, so it's dispatched rather than run in it
+        scheduler.dispatch(() -> {
+            JSArray mediasArray = new JSArray();
+            MediaPage page;
+            try {
+                page =
+                    queryMedias(
+                        call,
+                        new MediaSink() {
+                            @Override
+                            public void add(JSObject media) {
+                                mediasArray.put(media);
+                            }
+
+                            @Override
+                            public void flush() {}
+                        },
+                        lane,
+                        signal
+                    );
+            } catch (OperationCanceledException e) {
+                Log.d("MediaPlugin", "___GET MEDIAS CANCELLED");
+                call.reject("Request cancelled", EC_CANCELLED);
+                return;
+            } catch (IllegalArgumentException e) {
+                call.reject(e.getMessage(), EC_ARG_ERROR);
+                return;
+            } catch (Exception e) {
+                Log.e("MediaPlugin", "Error querying media", e);
+                call.reject("Error querying media: " + e.getMessage());
+                return;
+            } finally {
+                finishRequest(requestId, signal);
+            }
+
+            JSObject response = new JSObject();
+            response.put("medias", mediasArray);
+            response.put("totalCount", page.totalCount);
+            response.put("offset", call.getInt("offset", 0));
+            response.put("nextPageToken", page.nextPageToken != null ? page.nextPageToken : JSONObject.NULL);
+
+            Log.d("MediaPlugin", "___GET MEDIAS FINISHED: " + mediasArray.length() + " items of " + page.totalCount + " total");
+            call.resolve(response);
+        });
+    }
+
+    private void _getMediasStream(PluginCall call) {
+        Log.d("MediaPlugin", "___GET MEDIAS STREAM");
+
+        MediaScheduler.Lane lane = getLane(call);
+        if (lane == null) {
+            call.reject(INVALID_PRIORITY_ERROR, EC_ARG_ERROR);
+            return;
+        }
+
+        String requestId = UUID.randomUUID().toString();
+        CancellationSignal signal = startRequest(requestId);
+        JSObject started = new JSObject();
+        started.put("requestId", requestId);
+        call.resolve(started);
+
+        scheduler.dispatch(() -> {
+            JSObject complete = new JSObject();
+            complete.put("requestId", requestId);
+            complete.put("offset", call.getInt("offset", 0));
+
+            try {
+                MediaPage page = queryMedias(call, new StreamingMediaSink(requestId), lane, signal);
+                complete.put("totalCount", page.totalCount);
+                complete.put("nextPageToken", page.nextPageToken != null ? page.nextPageToken : JSONObject.NULL);
+            } catch (OperationCanceledException e) {
+                complete.put("error", "Request cancelled");
+                complete.put("code", EC_CANCELLED);
+            } catch (Exception e) {
+                Log.e("MediaPlugin", "Error querying media", e);
+                complete.put("error", "Error querying media: " + e.getMessage());
+            } finally {
+                finishRequest(requestId, signal);
+            }
+
+            Log.d("MediaPlugin", "___GET MEDIAS STREAM FINISHED");
+            notifyListeners(EVENT_MEDIA_COMPLETE, complete);
+        });
+    }
+
+    private void _getChanges(PluginCall call) {
+        Log.d("MediaPlugin", "___GET CHANGES");
+
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> {
+            MediaChangeTracker.Changes changes;
+            try {
+                changes = changeTracker.getChanges(call.getString("since"));
+            } catch (Exception e) {
+                Log.e("MediaPlugin", "Error querying changes", e);
+                call.reject("Error querying changes: " + e.getMessage());
+                return;
+            }
+
+            JSObject response = new JSObject();
+            response.put("token", changes.token);
+            response.put("fullResync", changes.fullResync);
+            response.put("inserted", new JSArray(changes.inserted));
+            response.put("updated", new JSArray(changes.updated));
+            response.put("deleted", new JSArray(changes.deleted));
+
+            Log.d(
+                "MediaPlugin",
+                "___GET CHANGES FINISHED: " +
+                changes.inserted.size() +
+                " inserted, " +
+                changes.updated.size() +
+                " updated, " +
+                changes.deleted.size() +
+                " deleted"
+            );
+            call.resolve(response);
+        });
+    }
+
+    /**
+     * Returns the lane for a read request from its priority option, or null if the option is invalid.
+     */
+    private static MediaScheduler.Lane getLane(PluginCall call) {
+        String priority = call.getString("priority", "interactive");
+        if ("interactive".equals(priority)) {
+            return MediaScheduler.Lane.INTERACTIVE;
+        }
+        if ("prefetch".equals(priority)) {
+            return MediaScheduler.Lane.PREFETCH;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the cancellation signal for a request. Requests with an id are registered, so cancel()
+     * can reach them until finishRequest() is called.
+     */
+    private CancellationSignal startRequest(String requestId) {
+        CancellationSignal signal = new CancellationSignal();
+        if (requestId != null) {
+            activeRequests.put(requestId, signal);
+        }
+        return signal;
+    }
+
+    private void finishRequest(String requestId, CancellationSignal signal) {
+        if (requestId != null) {
+            activeRequests.remove(requestId, signal);
+        }
+    }
+
+    private static class MediaPage {
+
+        int totalCount;
+        String nextPageToken;
+    }
+
+    /**
+     * Receives getMedias results in cursor order.
+     */
+    private interface MediaSink {
+        void add(JSObject media);
+
+        /**
+         * Called when no further item is ready yet, so anything buffered should be handed over now.
+         */
+        void flush();
+    }
+
+    /**
+     * Pushes getMedias results to JS in batches as they complete, so the first cells can paint before
+     * the rest of the page is done.
+     */
+    private class StreamingMediaSink implements MediaSink {
+
+        private final String requestId;
+        private JSArray buffer = new JSArray();
+
+        StreamingMediaSink(String requestId) {
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void add(JSObject media) {
+            buffer.put(media);
+            if (buffer.length() >= Math.min(STREAM_BATCH_SIZE, thumbnailBatchSize)) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (buffer.length() == 0) {
+                return;
+            }
+
+            JSObject event = new JSObject();
+            event.put("requestId", requestId);
+            event.put("medias", buffer);
+            notifyListeners(EVENT_MEDIA_ITEMS, event);
+            buffer = new JSArray();
+        }
+    }
+
+    /**
+     * Runs a getMedias query and hands the resulting items to the sink in cursor order, each as soon as
+     * its thumbnail is ready.
+     *
+     * @return the total number of items matching the query, and the token for the next page
+     * @throws OperationCanceledException once the signal is cancelled, at the latest after the item
+     *                                    being waited for
+     */
+    private MediaPage queryMedias(PluginCall call, MediaSink sink, MediaScheduler.Lane lane, CancellationSignal signal) {
         // Parse parameters
         Integer quantity = call.getInt("quantity", 20);
         Integer offset = call.getInt("offset", 0);
@@ -335,52 +875,37 @@ public class MediaPlugin extends Plugin {
         Integer thumbnailWidth = call.getInt("thumbnailWidth", 512);
         Integer thumbnailHeight = call.getInt("thumbnailHeight", 384);
         Integer thumbnailQuality = call.getInt("thumbnailQuality", 85);
+        Boolean includeThumbnails = call.getBoolean("includeThumbnails", true);
+        boolean thumbnailsAsPath = isPathOutput(call.getString("thumbnailOutput"));
+        String pageToken = call.getString("pageToken");
 
-        List<JSObject> mediaList = new ArrayList<>();
+        int collected = 0;
 
-        // Determine which content URIs to query based on types
-        List<Uri> contentUris = new ArrayList<>();
+        // Determine which collection to query based on types. Photos and videos together come from the
+        // Files collection, so a single cursor yields them in one globally sorted order.
+        Uri queryUri;
+        String[] projection = MediaRowMapper.PROJECTION;
+        List<String> selectionClauses = new ArrayList<>();
+        List<String> selectionArgsList = new ArrayList<>();
         if ("videos".equals(types)) {
-            contentUris.add(MediaStore.Video.Media.EXTERNAL_CONTENT_URI);
-        } else if ("photos".equals(types)) {
-            contentUris.add(MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            queryUri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
         } else if ("all".equals(types)) {
-            contentUris.add(MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
-            contentUris.add(MediaStore.Video.Media.EXTERNAL_CONTENT_URI);
+            queryUri = MediaStore.Files.getContentUri("external");
+            projection = MediaRowMapper.FILES_PROJECTION;
+            selectionClauses.add(
+                MediaStore.Files.FileColumns.MEDIA_TYPE +
+                " IN (" +
+                MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE +
+                ", " +
+                MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO +
+                ")"
+            );
         } else {
             // Default to photos
-            contentUris.add(MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
-        }
-
-        // Set up projection (columns to retrieve)
-        String[] projection = new String[] {
-            MediaStore.MediaColumns._ID,
-            MediaStore.MediaColumns.DATA,
-            MediaStore.MediaColumns.DATE_ADDED,
-            MediaStore.MediaColumns.DATE_MODIFIED,
-            MediaStore.MediaColumns.DISPLAY_NAME,
-            MediaStore.MediaColumns.SIZE
-        };
-
-        // Add date columns if available
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            projection =
-                new String[] {
-                    MediaStore.MediaColumns._ID,
-                    MediaStore.MediaColumns.DATA,
-                    MediaStore.MediaColumns.DATE_ADDED,
-                    MediaStore.MediaColumns.DATE_MODIFIED,
-                    MediaStore.MediaColumns.DATE_TAKEN,
-                    MediaStore.MediaColumns.DISPLAY_NAME,
-                    MediaStore.MediaColumns.SIZE,
-                    MediaStore.MediaColumns.RELATIVE_PATH
-                };
+            queryUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
         }
 
         // Build selection criteria
-        String selection = null;
-        List<String> selectionArgsList = new ArrayList<>();
-
         if (startDateStr != null && endDateStr != null) {
             try {
                 SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
@@ -392,7 +917,9 @@ public class MediaPlugin extends Plugin {
                     long endTimestamp = endDate.getTime() / 1000 + 86400;
                     // Add one day in seconds
 
-                    selection = MediaStore.MediaColumns.DATE_ADDED + " >= ? AND " + MediaStore.MediaColumns.DATE_ADDED + " <= ?";
+                    selectionClauses.add(
+                        MediaStore.MediaColumns.DATE_ADDED + " >= ? AND " + MediaStore.MediaColumns.DATE_ADDED + " <= ?"
+                    );
                     selectionArgsList.add(String.valueOf(startTimestamp));
                     selectionArgsList.add(String.valueOf(endTimestamp));
                 }
@@ -401,15 +928,15 @@ public class MediaPlugin extends Plugin {
             }
         }
 
+        String selection = selectionClauses.isEmpty() ? null : String.join(" AND ", selectionClauses);
         String[] selectionArgs = selectionArgsList.isEmpty() ? null : selectionArgsList.toArray(new String[0]);
 
         // Build sort order
-        String sortOrder;
+        List<MediaPageToken.SortKey> sortKeys = new ArrayList<>();
         JSArray sortArray = call.getArray("sort");
 
         if (sortArray != null && sortArray.length() > 0) {
             // Handle array format: [{"key": "creationDate", "ascending": false}]
-            List<String> sortDescriptors = new ArrayList<>();
             for (int i = 0; i < sortArray.length(); i++) {
                 try {
                     JSONObject sortObj = sortArray.getJSONObject(i);
@@ -417,326 +944,642 @@ public class MediaPlugin extends Plugin {
                     Boolean ascending = sortObj.optBoolean("ascending", false);
 
                     // Map the key to Android MediaStore column
-                    String column = mapSortKeyToColumn(key);
-                    sortDescriptors.add(column + (ascending ? " ASC" : " DESC"));
+                    sortKeys.add(new MediaPageToken.SortKey(mapSortKeyToColumn(key), ascending));
                 } catch (Exception e) {
                     Log.w("MediaPlugin", "Invalid sort object, skipping: " + e.getMessage());
                 }
             }
-            sortOrder = sortDescriptors.isEmpty() ? MediaStore.MediaColumns.DATE_ADDED + " DESC" : String.join(", ", sortDescriptors);
+            if (sortKeys.isEmpty()) {
+                sortKeys.add(new MediaPageToken.SortKey(MediaStore.MediaColumns.DATE_ADDED, false));
+            }
         } else {
             // Handle string format: "creationDate"
-            String column = mapSortKeyToColumn(sortParam);
-            sortOrder = column + " DESC";
+            sortKeys.add(new MediaPageToken.SortKey(mapSortKeyToColumn(sortParam), false));
+        }
+        String sortOrder = MediaPageToken.sortOrder(sortKeys);
+
+        // A page token continues right after the last row of the previous page, so the offset
+        // doesn't need to be skipped and rows inserted in the meantime don't shift the page
+        String baseSelection = selection;
+        String[] baseSelectionArgs = selectionArgs;
+        if (pageToken != null) {
+            MediaPageToken token = MediaPageToken.decode(pageToken);
+            if (!token.matches(sortKeys)) {
+                throw new IllegalArgumentException("Page token does not match the requested sort order");
+            }
+            token.appendSelection(selectionClauses, selectionArgsList);
+            selection = String.join(" AND ", selectionClauses);
+            selectionArgs = selectionArgsList.toArray(new String[0]);
+            offset = 0;
         }
 
-        int totalCount = 0;
-        int itemsProcessed = 0;
-
-        // Query each content URI (photos, videos, or both)
-        for (Uri contentUri : contentUris) {
-            Cursor cursor = null;
-            try {
-                cursor = getActivity().getContentResolver().query(contentUri, projection, selection, selectionArgs, sortOrder);
-
-                if (cursor != null) {
-                    totalCount += cursor.getCount();
-
-                    if (cursor.getCount() > 0) {
-                        // Determine media type based on content URI
-                        String mediaType = contentUri.equals(MediaStore.Video.Media.EXTERNAL_CONTENT_URI) ? "video" : "photo";
-
-                        // Skip offset items
-                        int skipCount = Math.max(0, offset - itemsProcessed);
-                        if (skipCount > 0 && cursor.getCount() > skipCount) {
-                            cursor.moveToPosition(skipCount - 1);
-                        } else if (skipCount >= cursor.getCount()) {
-                            itemsProcessed += cursor.getCount();
-                            cursor.close();
+        MediaPage page = new MediaPage();
+        page.totalCount = countMedia(queryUri, baseSelection, baseSelectionArgs, signal);
+
+        // Rows consumed from offset on, including items whose thumbnail failed
+        int consumed = 0;
+        boolean hasMore = true;
+
+        // Only the rows of this page are queried. Failed thumbnails are backfilled by querying
+        // the rows after them, so the page still fills up to quantity.
+        while (collected < quantity && hasMore) {
+            // Under memory pressure the page is worked off in smaller rounds, so fewer finished
+            // thumbnails wait in memory for the slowest one
+            int needed = includeThumbnails ? Math.min(quantity - collected, thumbnailBatchSize) : quantity - collected;
+
+            // One extra row tells whether there is a next page
+            try (
+                Cursor cursor = queryPage(queryUri, projection, selection, selectionArgs, sortOrder, needed + 1, offset + consumed, signal)
+            ) {
+                if (cursor == null) {
+                    break;
+                }
+                MediaRowMapper rowMapper = new MediaRowMapper(cursor, queryUri);
+
+                // Cursors are not thread-safe, so rows are read here and only the thumbnail
+                // work is handed to the pool
+                List<JSObject> batch = new ArrayList<>();
+                List<Future<Boolean>> pending = new ArrayList<>();
+                int read = 0;
+                while (read < needed && cursor.moveToNext()) {
+                    read++;
+                    try {
+                        Uri mediaUri = rowMapper.getMediaUri(cursor);
+                        long dateModified = rowMapper.getDateModified(cursor);
+                        JSObject media = rowMapper.map(cursor, mediaUri);
+
+                        if (!includeThumbnails) {
+                            // Metadata-only listing: never decode, never drop items
+                            if (!media.has("fullWidth")) {
+                                media.put("fullWidth", 0);
+                                media.put("fullHeight", 0);
+                            }
+                            sink.add(media);
+                            collected++;
                             continue;
                         }
 
-                        while (cursor.moveToNext() && mediaList.size() < quantity) {
-                            try {
-                                long id = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID));
-                                long dateAdded = cursor.getLong(cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED));
-                                long dateModified = 0;
-                                int dateModIdx = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
-                                if (dateModIdx >= 0) {
-                                    dateModified = cursor.getLong(dateModIdx);
-                                }
-
-                                // Build content URI for the media
-                                Uri mediaUri = Uri.withAppendedPath(contentUri, String.valueOf(id));
-
-                                // Get identifier - use content URI for all Android versions
-                                String identifier = mediaUri.toString();
-
-                                // Generate base64 thumbnail
-                                String dataUrl = getThumbnailBase64(mediaUri, thumbnailWidth, thumbnailHeight, thumbnailQuality);
-
-                                if (dataUrl == null) {
-                                    Log.w("MediaPlugin", "Could not generate thumbnail for media: " + identifier);
-                                    continue;
-                                }
-
-                                // Get original media dimensions
-                                int[] dimensions = getImageDimensions(mediaUri);
-
-                                // Create media object
-                                JSObject media = new JSObject();
-                                media.put("identifier", identifier);
-                                media.put("dataUrl", dataUrl);
-                                SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
-                                media.put("creationDate", iso.format(new Date(dateAdded * 1000)));
-                                if (dateModified > 0) {
-                                    media.put("modificationDate", iso.format(new Date(dateModified * 1000)));
-                                }
-                                media.put("hasAdjustments", false); // Not available on Android
-                                media.put("addedDate", JSONObject.NULL);
-                                media.put("fullWidth", dimensions[0]);
-                                media.put("fullHeight", dimensions[1]);
-                                media.put("thumbnailWidth", thumbnailWidth);
-                                media.put("thumbnailHeight", thumbnailHeight);
-                                media.put("type", mediaType);
-                                media.put("isFavorite", false); // Android doesn't have a native favorites concept
-
-                                // Detect screenshots via RELATIVE_PATH (API 29+) or DATA path fallback
-                                boolean isScreenshot = false;
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                                    int relPathIdx = cursor.getColumnIndex(MediaStore.MediaColumns.RELATIVE_PATH);
-                                    if (relPathIdx >= 0) {
-                                        String relPath = cursor.getString(relPathIdx);
-                                        if (relPath != null && relPath.toLowerCase(Locale.US).contains("screenshots")) {
-                                            isScreenshot = true;
-                                        }
-                                    }
-                                }
-                                if (!isScreenshot) {
-                                    int dataIdx = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
-                                    if (dataIdx >= 0) {
-                                        String dataPath = cursor.getString(dataIdx);
-                                        if (dataPath != null && dataPath.toLowerCase(Locale.US).contains("/screenshots/")) {
-                                            isScreenshot = true;
-                                        }
-                                    }
-                                }
-                                media.put("isScreenshot", isScreenshot);
-
-                                // Detect camera captures via DCIM/ path
-                                boolean isCameraCapture = false;
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                                    int relPathIdx2 = cursor.getColumnIndex(MediaStore.MediaColumns.RELATIVE_PATH);
-                                    if (relPathIdx2 >= 0) {
-                                        String rel = cursor.getString(relPathIdx2);
-                                        if (rel != null && rel.toLowerCase(Locale.US).contains("dcim/")) {
-                                            isCameraCapture = true;
-                                        }
-                                    }
-                                }
-                                if (!isCameraCapture) {
-                                    int dataIdx2 = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
-                                    if (dataIdx2 >= 0) {
-                                        String data = cursor.getString(dataIdx2);
-                                        if (data != null && data.toLowerCase(Locale.US).contains("/dcim/")) {
-                                            isCameraCapture = true;
-                                        }
-                                    }
-                                }
-                                media.put("isCameraCapture", isCameraCapture);
-
-                                // Derive source from storage path
-                                String pathForSource = "";
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                                    int rpIdx = cursor.getColumnIndex(MediaStore.MediaColumns.RELATIVE_PATH);
-                                    if (rpIdx >= 0) {
-                                        String rp = cursor.getString(rpIdx);
-                                        if (rp != null) pathForSource = rp.toLowerCase(Locale.US);
-                                    }
-                                }
-                                if (pathForSource.isEmpty()) {
-                                    int dIdx = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
-                                    if (dIdx >= 0) {
-                                        String d = cursor.getString(dIdx);
-                                        if (d != null) pathForSource = d.toLowerCase(Locale.US);
-                                    }
-                                }
-                                String source;
-                                if (isScreenshot) {
-                                    source = "screenshot";
-                                } else if (pathForSource.contains("whatsapp")) {
-                                    source = "messaging:whatsapp";
-                                } else if (pathForSource.contains("telegram")) {
-                                    source = "messaging:telegram";
-                                } else if (pathForSource.contains("messenger")) {
-                                    source = "messaging:messenger";
-                                } else if (pathForSource.contains("signal")) {
-                                    source = "messaging:signal";
-                                } else if (pathForSource.contains("/download/") || pathForSource.startsWith("download/")) {
-                                    source = "download";
-                                } else if (pathForSource.contains("dcim/")) {
-                                    source = "camera";
-                                } else if (pathForSource.contains("pictures/")) {
-                                    source = "pictures";
-                                } else {
-                                    source = "other";
-                                }
-                                media.put("source", source);
-                                media.put("sourceType", ""); // iOS-only: PHAsset.sourceType
-
-                                // Add location (default to empty)
-                                JSObject location = new JSObject();
-                                location.put("latitude", 0);
-                                location.put("longitude", 0);
-                                location.put("heading", 0);
-                                location.put("altitude", 0);
-                                location.put("speed", 0);
-                                media.put("location", location);
-                                media.put("hasLocation", false); // Android location is not populated from EXIF
-
-                                mediaList.add(media);
-                                itemsProcessed++;
-                            } catch (Exception e) {
-                                Log.e("MediaPlugin", "Error processing media item", e);
-                            }
-                        }
+                        media.put("thumbnailWidth", thumbnailWidth);
+                        media.put("thumbnailHeight", thumbnailHeight);
+                        batch.add(media);
+                        // Queued work of a cancelled request is skipped when it comes up
+                        pending.add(
+                            scheduler.submit(lane, () ->
+                                !signal.isCanceled() &&
+                                attachThumbnail(
+                                    media,
+                                    mediaUri,
+                                    dateModified,
+                                    thumbnailWidth,
+                                    thumbnailHeight,
+                                    thumbnailQuality,
+                                    thumbnailsAsPath,
+                                    signal
+                                )
+                            )
+                        );
+                    } catch (Exception e) {
+                        Log.e("MediaPlugin", "Error processing media item", e);
                     }
                 }
-            } catch (Exception e) {
-                Log.e("MediaPlugin", "Error querying media", e);
-                call.reject("Error querying media: " + e.getMessage());
-                return;
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
+                consumed += read;
+
+                // Point the next page right after the last row read, including rows that get skipped
+                hasMore = read == needed && !cursor.isLast() && !cursor.isAfterLast();
+                if (hasMore) {
+                    page.nextPageToken = MediaPageToken.fromRow(sortKeys, cursor).encode();
+                } else {
+                    page.nextPageToken = null;
                 }
-            }
 
-            // Stop if we've collected enough items
-            if (mediaList.size() >= quantity) {
-                break;
+                // Collect in cursor order, handing over whatever is ready whenever the
+                // next item is still being worked on
+                for (int i = 0; i < batch.size(); i++) {
+                    Boolean attached = awaitResult(pending.get(i));
+                    signal.throwIfCanceled();
+                    if (Boolean.TRUE.equals(attached)) {
+                        sink.add(batch.get(i));
+                        collected++;
+                    }
+                    if (i + 1 < batch.size() && !pending.get(i + 1).isDone()) {
+                        sink.flush();
+                    }
+                }
             }
         }
 
-        // Convert list to JSArray
-        JSArray mediasArray = new JSArray();
-        for (JSObject media : mediaList) {
-            mediasArray.put(media);
+        sink.flush();
+        return page;
+    }
+
+    /**
+     * Queries a single page of rows. On API 30+ the limit and offset are passed as query arguments;
+     * providers that don't honor them return all rows, in which case the offset is skipped here.
+     * Below API 30 MediaProvider ignores those arguments, so they go in the sort order instead.
+     */
+    private Cursor queryPage(
+        Uri uri,
+        String[] projection,
+        String selection,
+        String[] selectionArgs,
+        String sortOrder,
+        int limit,
+        int offset,
+        CancellationSignal signal
+    ) {
+        ContentResolver resolver = getActivity().getContentResolver();
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            // Below API 30 the provider accepts a LIMIT in the sort order
+            return resolver.query(uri, projection, selection, selectionArgs, sortOrder + " LIMIT " + limit + " OFFSET " + offset, signal);
         }
 
-        JSObject response = new JSObject();
-        response.put("medias", mediasArray);
-        response.put("totalCount", totalCount);
-        response.put("offset", offset);
+        Bundle queryArgs = new Bundle();
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+        queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+        queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+        queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+        queryArgs.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+
+        Cursor cursor = resolver.query(uri, projection, queryArgs, signal);
+        if (cursor != null && offset > 0 && !isQueryArgHonored(cursor, ContentResolver.QUERY_ARG_OFFSET)) {
+            // Positioning past the end simply leaves nothing to read
+            cursor.moveToPosition(offset - 1);
+        }
+        return cursor;
+    }
 
-        Log.d("MediaPlugin", "___GET MEDIAS FINISHED: " + mediaList.size() + " items of " + totalCount + " total");
-        call.resolve(response);
+    private static boolean isQueryArgHonored(Cursor cursor, String arg) {
+        Bundle extras = cursor.getExtras();
+        String[] honored = extras != null ? extras.getStringArray(ContentResolver.EXTRA_HONORED_ARGS) : null;
+        return honored != null && Arrays.asList(honored).contains(arg);
     }
 
-    private void _getMediaByIdentifier(PluginCall call) {
-        Log.d("MediaPlugin", "___GET MEDIA BY IDENTIFIER");
+    /**
+     * Counts the rows matching a selection with an _ID-only query. Counts are cached until the next
+     * MediaStore change, so paging through a large library only counts it once.
+     */
+    private int countMedia(Uri queryUri, String selection, String[] selectionArgs, CancellationSignal signal) {
+        String key =
+            mediaStoreObserver.getGeneration() +
+            "|" +
+            queryUri +
+            "|" +
+            selection +
+            "|" +
+            (selectionArgs != null ? String.join(",", selectionArgs) : "");
+        Integer cached = countCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
 
-        String identifier = call.getString("identifier");
-        if (identifier == null) {
-            call.reject("Must provide an identifier", EC_ARG_ERROR);
-            return;
+        String[] projection = { MediaStore.MediaColumns._ID };
+        try (Cursor cursor = getActivity().getContentResolver().query(queryUri, projection, selection, selectionArgs, null, signal)) {
+            int count = cursor != null ? cursor.getCount() : 0;
+            countCache.put(key, count);
+            return count;
         }
+    }
 
-        Integer width = call.getInt("width");
-        Float compression = call.getFloat("compression", 1.0f);
+    /**
+     * Generates the thumbnail for a media object, and reads the original dimensions if MediaStore
+     * didn't provide them. Runs on the thumbnail pool, so it must not touch the cursor.
+     *
+     * @return false if no thumbnail could be generated and the item should be skipped
+     */
+    private boolean attachThumbnail(
+        JSObject media,
+        Uri mediaUri,
+        long dateModified,
+        int thumbnailWidth,
+        int thumbnailHeight,
+        int thumbnailQuality,
+        boolean asPath,
+        CancellationSignal signal
+    ) {
+        if (asPath) {
+            File file = getThumbnailFile(mediaUri, dateModified, thumbnailWidth, thumbnailHeight, thumbnailQuality, signal);
+            if (file == null) {
+                Log.w("MediaPlugin", "Could not generate thumbnail for media: " + mediaUri);
+                return false;
+            }
+            media.put("thumbnailWebPath", getWebPath(file));
+        } else {
+            // Generate base64 thumbnail
+            String dataUrl = getThumbnailBase64(mediaUri, dateModified, thumbnailWidth, thumbnailHeight, thumbnailQuality, signal);
+            if (dataUrl == null) {
+                Log.w("MediaPlugin", "Could not generate thumbnail for media: " + mediaUri);
+                return false;
+            }
+            media.put("dataUrl", dataUrl);
+        }
 
-        // Validate compression parameter
-        if (compression < 0.0f || compression > 1.0f) {
-            call.reject("Invalid compression parameter (must be between 0.0 and 1.0)", EC_ARG_ERROR);
-            return;
+        // Legacy rows don't carry their dimensions, so decode the bounds
+        if (!media.has("fullWidth")) {
+            int[] dimensions = getImageDimensions(mediaUri);
+            media.put("fullWidth", dimensions[0]);
+            media.put("fullHeight", dimensions[1]);
         }
+        return true;
+    }
 
+    /**
+     * Waits for a pooled task, returning null if it failed or was cancelled.
+     */
+    private <T> T awaitResult(Future<T> future) {
         try {
-            Uri mediaUri = Uri.parse(identifier);
-
-            // Determine if this is a video or image
-            boolean isVideo = identifier.contains("video");
-
-            if (isVideo) {
-                // Handle video
-                handleVideoByIdentifier(call, mediaUri);
-            } else {
-                // Handle image
-                handleImageByIdentifier(call, mediaUri, width, compression);
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OperationCanceledException) {
+                return null;
             }
-        } catch (Exception e) {
-            Log.e("MediaPlugin", "Error getting media by identifier", e);
-            call.reject("Error getting media: " + e.getMessage(), EC_ARG_ERROR);
+            Log.e("MediaPlugin", "Error processing media item", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 
-    private void handleImageByIdentifier(PluginCall call, Uri mediaUri, Integer width, Float compression) {
-        try {
-            // Load the full image
-            Bitmap fullImage = MediaStore.Images.Media.getBitmap(getActivity().getContentResolver(), mediaUri);
-
-            if (fullImage == null) {
-                call.reject("Failed to load image", EC_ARG_ERROR);
-                return;
-            }
+    private void _getThumbnails(PluginCall call) {
+        Log.d("MediaPlugin", "___GET THUMBNAILS");
 
-            int originalWidth = fullImage.getWidth();
-            int originalHeight = fullImage.getHeight();
-            Bitmap processedImage = fullImage;
+        JSArray identifiersArray = call.getArray("identifiers");
+        if (identifiersArray == null) {
+            call.reject("Must provide identifiers", EC_ARG_ERROR);
+            return;
+        }
 
-            // Resize if width parameter is provided and image is larger
-            if (width != null && originalWidth > width) {
-                float scale = (float) width / originalWidth;
-                int newHeight = Math.round(originalHeight * scale);
-                processedImage = Bitmap.createScaledBitmap(fullImage, width, newHeight, true);
+        Integer width = call.getInt("width", 512);
+        Integer height = call.getInt("height", 384);
+        Integer quality = call.getInt("quality", 85);
+        boolean asPath = isPathOutput(call.getString("output"));
+        MediaScheduler.Lane lane = getLane(call);
+        if (lane == null) {
+            call.reject(INVALID_PRIORITY_ERROR, EC_ARG_ERROR);
+            return;
+        }
 
-                // Recycle original if we created a new one
-                if (processedImage != fullImage) {
-                    fullImage.recycle();
-                }
+        List<String> identifiers = new ArrayList<>();
+        try {
+            for (int i = 0; i < identifiersArray.length(); i++) {
+                identifiers.add(identifiersArray.getString(i));
             }
+        } catch (JSONException e) {
+            call.reject("Identifiers must be strings", EC_ARG_ERROR);
+            return;
+        }
 
-            // Compress to JPEG
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            int quality = Math.round(compression * 100);
-            processedImage.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-            byte[] imageBytes = outputStream.toByteArray();
-
-            // Create base64 data URL
-            String base64 = Base64.encodeToString(imageBytes, Base64.NO_WRAP);
-            String dataUrl = "data:image/jpeg;base64," + base64;
-
-            // Save to temporary file
-            File tempFile = File.createTempFile("image-" + System.currentTimeMillis(), ".jpg", getContext().getCacheDir());
+        String requestId = call.getString("requestId");
+        CancellationSignal signal = startRequest(requestId);
 
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            fos.write(imageBytes);
-            fos.close();
+        scheduler.dispatch(() -> {
+            try {
+                JSObject response = new JSObject();
+                response.put("thumbnails", loadThumbnails(identifiers, width, height, quality, asPath, lane, signal));
+
+                Log.d("MediaPlugin", "___GET THUMBNAILS FINISHED");
+                call.resolve(response);
+            } catch (OperationCanceledException e) {
+                Log.d("MediaPlugin", "___GET THUMBNAILS CANCELLED");
+                call.reject("Request cancelled", EC_CANCELLED);
+            } finally {
+                finishRequest(requestId, signal);
+            }
+        });
+    }
 
-            // Clean up bitmap
-            processedImage.recycle();
+    private JSArray loadThumbnails(
+        List<String> identifiers,
+        int width,
+        int height,
+        int quality,
+        boolean asPath,
+        MediaScheduler.Lane lane,
+        CancellationSignal signal
+    ) {
+        // The disk cache is keyed by DATE_MODIFIED, so look those up in bulk first. Identifiers that
+        // no longer exist in MediaStore are reported without a thumbnail.
+        Map<String, Long> modificationDates = queryDateModified(identifiers, signal);
+
+        List<Future<String>> pending = new ArrayList<>();
+        for (String identifier : identifiers) {
+            Long dateModified = modificationDates.get(identifier);
+            if (dateModified == null) {
+                pending.add(null);
+                continue;
+            }
+            Uri mediaUri = Uri.parse(identifier);
+            pending.add(
+                scheduler.submit(lane, () -> {
+                    if (signal.isCanceled()) {
+                        return null;
+                    }
+                    if (asPath) {
+                        File file = getThumbnailFile(mediaUri, dateModified, width, height, quality, signal);
+                        return file != null ? getWebPath(file) : null;
+                    }
+                    return getThumbnailBase64(mediaUri, dateModified, width, height, quality, signal);
+                })
+            );
+        }
 
-            // Return result
-            JSObject result = new JSObject();
-            result.put("identifier", mediaUri.toString());
-            result.put("path", "file://" + tempFile.getAbsolutePath());
-            result.put("dataUrl", dataUrl);
+        JSArray thumbnails = new JSArray();
+        for (int i = 0; i < identifiers.size(); i++) {
+            String result = pending.get(i) != null ? awaitResult(pending.get(i)) : null;
+            signal.throwIfCanceled();
 
-            Log.d("MediaPlugin", "___GET MEDIA BY IDENTIFIER FINISHED");
-            call.resolve(result);
-        } catch (IOException e) {
-            Log.e("MediaPlugin", "Error processing image", e);
-            call.reject("Error processing image: " + e.getMessage(), EC_FS_ERROR);
+            JSObject thumbnail = new JSObject();
+            thumbnail.put("identifier", identifiers.get(i));
+            thumbnail.put(asPath ? "webPath" : "dataUrl", result != null ? result : JSONObject.NULL);
+            thumbnails.put(thumbnail);
         }
+        return thumbnails;
     }
 
-    private void handleVideoByIdentifier(PluginCall call, Uri mediaUri) {
-        try {
-            // For video, we'll just copy it to a temp file and return the path
-            // We don't resize or compress videos
-
-            String[] projection = { MediaStore.Video.Media.DATA };
-            Cursor cursor = getActivity().getContentResolver().query(mediaUri, projection, null, null, null);
+    /**
+     * Looks up DATE_MODIFIED for a list of content URI identifiers, with one query per collection
+     * rather than one per item.
+     */
+    private Map<String, Long> queryDateModified(List<String> identifiers, CancellationSignal signal) {
+        Map<String, List<String>> idsByCollection = new HashMap<>();
+        for (String identifier : identifiers) {
+            int slash = identifier.lastIndexOf('/');
+            if (!identifier.startsWith("content://") || slash < 0) {
+                continue;
+            }
+            String collection = identifier.substring(0, slash);
+            List<String> ids = idsByCollection.get(collection);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                idsByCollection.put(collection, ids);
+            }
+            ids.add(identifier.substring(slash + 1));
+        }
+
+        Map<String, Long> modificationDates = new HashMap<>();
+        String[] projection = { MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATE_MODIFIED };
+        for (Map.Entry<String, List<String>> entry : idsByCollection.entrySet()) {
+            List<String> ids = entry.getValue();
+
+            // Stay well below SQLite's bound parameter limit
+            for (int start = 0; start < ids.size(); start += MAX_SELECTION_ARGS) {
+                List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_SELECTION_ARGS));
+                StringBuilder selection = new StringBuilder(MediaStore.MediaColumns._ID).append(" IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    selection.append(i == 0 ? "?" : ",?");
+                }
+                selection.append(")");
+
+                try (
+                    Cursor cursor = getActivity()
+                        .getContentResolver()
+                        .query(Uri.parse(entry.getKey()), projection, selection.toString(), chunk.toArray(new String[0]), null, signal)
+                ) {
+                    if (cursor == null) {
+                        continue;
+                    }
+                    while (cursor.moveToNext()) {
+                        modificationDates.put(entry.getKey() + "/" + cursor.getLong(0), cursor.getLong(1));
+                    }
+                } catch (OperationCanceledException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Log.e("MediaPlugin", "Error querying media", e);
+                }
+            }
+        }
+        return modificationDates;
+    }
+
+    private void _getMediaByIdentifier(PluginCall call) {
+        Log.d("MediaPlugin", "___GET MEDIA BY IDENTIFIER");
+
+        String identifier = call.getString("identifier");
+        if (identifier == null) {
+            call.reject("Must provide an identifier", EC_ARG_ERROR);
+            return;
+        }
+
+        Integer width = call.getInt("width");
+        Float compression = call.getFloat("compression", 1.0f);
+        String output = call.getString("output", "both");
+
+        if (!"dataUrl".equals(output) && !"path".equals(output) && !"both".equals(output)) {
+            call.reject("Invalid output parameter (must be dataUrl, path or both)", EC_ARG_ERROR);
+            return;
+        }
+
+        // Validate compression parameter
+        if (compression < 0.0f || compression > 1.0f) {
+            call.reject("Invalid compression parameter (must be between 0.0 and 1.0)", EC_ARG_ERROR);
+            return;
+        }
+
+        MediaScheduler.Lane lane = getLane(call);
+        if (lane == null) {
+            call.reject(INVALID_PRIORITY_ERROR, EC_ARG_ERROR);
+            return;
+        }
+
+        String requestId = call.getString("requestId");
+        CancellationSignal signal = startRequest(requestId);
+
+        scheduler.execute(lane, () -> {
+            try {
+                // It may have been cancelled while queued
+                signal.throwIfCanceled();
+
+                Uri mediaUri = Uri.parse(identifier);
+
+                // Determine if this is a video or image
+                boolean isVideo = identifier.contains("video");
+
+                if (isVideo) {
+                    // Handle video
+                    handleVideoByIdentifier(call, mediaUri, signal);
+                } else {
+                    // Handle image
+                    handleImageByIdentifier(call, mediaUri, width, compression, output, signal);
+                }
+            } catch (OperationCanceledException e) {
+                Log.d("MediaPlugin", "___GET MEDIA BY IDENTIFIER CANCELLED");
+                call.reject("Request cancelled", EC_CANCELLED);
+            } catch (Exception e) {
+                Log.e("MediaPlugin", "Error getting media by identifier", e);
+                call.reject("Error getting media: " + e.getMessage(), EC_ARG_ERROR);
+            } finally {
+                finishRequest(requestId, signal);
+            }
+        });
+    }
+
+    private void handleImageByIdentifier(
+        PluginCall call,
+        Uri mediaUri,
+        Integer width,
+        Float compression,
+        String output,
+        CancellationSignal signal
+    ) {
+        int quality = Math.round(compression * 100);
+
+        // Results are cached per source version, so repeated requests reuse the encoded file
+        String cacheKey = imageDiskCache != null ? imageCacheKey(mediaUri, width, quality, signal) : null;
+
+        try {
+            File file = null;
+            byte[] imageBytes = null;
+
+            if (cacheKey != null) {
+                file = imageDiskCache.getFile(cacheKey);
+                if (file != null && !"path".equals(output)) {
+                    imageBytes = imageDiskCache.get(cacheKey);
+                    if (imageBytes == null) {
+                        file = null;
+                    }
+                }
+            }
+
+            if (file == null) {
+                // Concurrent requests for the same image share one decode and encode
+                String flightKey = mediaUri + "|" + (width != null ? width : 0) + "|" + quality + "|" + output;
+                EncodedImage encoded = imageFlights.run(flightKey, signal, () ->
+                    encodeImage(mediaUri, width, quality, output, cacheKey, signal)
+                );
+                if (encoded == null) {
+                    call.reject("Failed to load image", EC_ARG_ERROR);
+                    return;
+                }
+                file = encoded.file;
+                imageBytes = encoded.bytes;
+            }
+
+            JSObject result = new JSObject();
+            result.put("identifier", mediaUri.toString());
+
+            if (!"path".equals(output)) {
+                // Create base64 data URL
+                String base64 = Base64.encodeToString(imageBytes, Base64.NO_WRAP);
+                result.put("dataUrl", "data:image/jpeg;base64," + base64);
+            }
+
+            if (!"dataUrl".equals(output)) {
+                result.put("path", "file://" + file.getAbsolutePath());
+                result.put("webPath", getWebPath(file));
+            }
+
+            Log.d("MediaPlugin", "___GET MEDIA BY IDENTIFIER FINISHED");
+            call.resolve(result);
+        } catch (IOException e) {
+            Log.e("MediaPlugin", "Error processing image", e);
+            call.reject("Error processing image: " + e.getMessage(), EC_FS_ERROR);
+        }
+    }
+
+    private String imageCacheKey(Uri mediaUri, Integer width, int quality, CancellationSignal signal) {
+        List<String> identifiers = Collections.singletonList(mediaUri.toString());
+        Long dateModified = queryDateModified(identifiers, signal).get(mediaUri.toString());
+        if (dateModified == null) {
+            return null;
+        }
+        int keyWidth = width != null ? width : 0;
+        return mediaUri.getLastPathSegment() + "-" + dateModified + "-w" + keyWidth + "-q" + quality + ".jpg";
+    }
+
+    private static class EncodedImage {
+
+        final File file;
+        final byte[] bytes;
+
+        EncodedImage(File file, byte[] bytes) {
+            this.file = file;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Decodes an image at the requested width and encodes it as JPEG: into a file for path output,
+     * into bytes for data URL output, and both for both. With the image cache enabled the bytes of a
+     * data URL are written to it too, so later requests in any output mode are served from the file.
+     *
+     * @return the encoded image, or null if it could not be decoded
+     */
+    private EncodedImage encodeImage(
+        Uri mediaUri,
+        Integer width,
+        int quality,
+        String output,
+        String cacheKey,
+        CancellationSignal signal
+    ) throws IOException {
+        // Decode at the requested width rather than the full resolution
+        int maxWidth = width != null ? width : Integer.MAX_VALUE;
+        Bitmap processedImage = MediaImageDecoder.decode(getActivity().getContentResolver(), mediaUri, maxWidth, Integer.MAX_VALUE);
+        if (processedImage == null) {
+            return null;
+        }
+
+        File file = null;
+        byte[] imageBytes = null;
+        try {
+            // The decode itself can't be interrupted, so a cancel during it is honored here
+            signal.throwIfCanceled();
+
+            if ("path".equals(output)) {
+                // Encode straight into the file, the image never exists as a byte array
+                File tmp = newImageFile(cacheKey);
+                try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                    processedImage.compress(Bitmap.CompressFormat.JPEG, quality, os);
+                }
+                file = commitImageFile(cacheKey, tmp);
+            } else {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                processedImage.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+                imageBytes = outputStream.toByteArray();
+
+                if ("both".equals(output) || cacheKey != null) {
+                    File tmp = newImageFile(cacheKey);
+                    try (OutputStream os = new FileOutputStream(tmp)) {
+                        os.write(imageBytes);
+                    }
+                    file = commitImageFile(cacheKey, tmp);
+                }
+            }
+        } finally {
+            // Clean up bitmap
+            processedImage.recycle();
+        }
+        return new EncodedImage(file, imageBytes);
+    }
+
+    /**
+     * Creates the file to encode an image result into: a pending entry of the image cache, or a plain
+     * temporary file when the cache is disabled.
+     */
+    private File newImageFile(String cacheKey) throws IOException {
+        if (cacheKey != null) {
+            return imageDiskCache.newTempFile(cacheKey);
+        }
+        return tempFiles.create("image-", ".jpg");
+    }
+
+    private File commitImageFile(String cacheKey, File file) throws IOException {
+        if (cacheKey != null) {
+            return imageDiskCache.commit(cacheKey, file);
+        }
+        // Written completely, so it can be evicted by age or size from now on
+        tempFiles.release(file);
+        return file;
+    }
+
+    private void handleVideoByIdentifier(PluginCall call, Uri mediaUri, CancellationSignal signal) {
+        try {
+            // For video, we'll just copy it to a temp file and return the path
+            // We don't resize or compress videos
+
+            String[] projection = { MediaStore.Video.Media.DATA };
+            Cursor cursor = getActivity().getContentResolver().query(mediaUri, projection, null, null, null, signal);
 
             if (cursor != null && cursor.moveToFirst()) {
                 int columnIndex = cursor.getColumnIndex(MediaStore.Video.Media.DATA);
@@ -746,6 +1589,7 @@ public class MediaPlugin extends Plugin {
                 JSObject result = new JSObject();
                 result.put("identifier", mediaUri.toString());
                 result.put("path", "file://" + videoPath);
+                result.put("webPath", getWebPath(new File(videoPath)));
 
                 Log.d("MediaPlugin", "___GET VIDEO BY IDENTIFIER FINISHED");
                 call.resolve(result);
@@ -755,6 +1599,8 @@ public class MediaPlugin extends Plugin {
                 }
                 call.reject("Failed to get video data", EC_ARG_ERROR);
             }
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
             Log.e("MediaPlugin", "Error processing video", e);
             call.reject("Error processing video: " + e.getMessage(), EC_FS_ERROR);
@@ -768,6 +1614,68 @@ public class MediaPlugin extends Plugin {
         call.resolve(data);
     }
 
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        JSObject memoryCache = new JSObject();
+        memoryCache.put("size", thumbnailMemoryCache.size());
+        memoryCache.put("maxSize", thumbnailMemoryCache.maxSize());
+        memoryCache.put("hitCount", thumbnailMemoryCache.hitCount());
+        memoryCache.put("missCount", thumbnailMemoryCache.missCount());
+        memoryCache.put("evictionCount", thumbnailMemoryCache.evictionCount());
+
+        JSObject diskCache = new JSObject();
+        diskCache.put("size", thumbnailDiskCache != null ? thumbnailDiskCache.size() : 0);
+        diskCache.put("maxSize", thumbnailDiskCache != null ? thumbnailDiskCache.maxSize() : 0);
+
+        JSObject imageCache = new JSObject();
+        imageCache.put("size", imageDiskCache != null ? imageDiskCache.size() : 0);
+        imageCache.put("maxSize", imageDiskCache != null ? imageDiskCache.maxSize() : 0);
+
+        JSObject temp = new JSObject();
+        temp.put("size", tempFiles.size());
+        temp.put("maxSize", tempFiles.maxSize());
+        temp.put("count", tempFiles.count());
+        temp.put("inUseCount", tempFiles.inUseCount());
+
+        JSObject bufferPool = new JSObject();
+        bufferPool.put("size", encodeBuffers.size());
+        bufferPool.put("maxSize", encodeBuffers.maxSize());
+        bufferPool.put("hitCount", encodeBuffers.hitCount());
+        bufferPool.put("missCount", encodeBuffers.missCount());
+
+        JSObject bitmaps = new JSObject();
+        bitmaps.put("size", bitmapPool.size());
+        bitmaps.put("maxSize", bitmapPool.maxSize());
+        bitmaps.put("hitCount", bitmapPool.hitCount());
+        bitmaps.put("missCount", bitmapPool.missCount());
+
+        JSObject coalesced = new JSObject();
+        coalesced.put("thumbnails", thumbnailFlights.coalescedCount());
+        coalesced.put("images", imageFlights.coalescedCount());
+
+        JSObject result = new JSObject();
+        result.put("thumbnailMemoryCache", memoryCache);
+        result.put("thumbnailDiskCache", diskCache);
+        result.put("imageDiskCache", imageCache);
+        result.put("tempFiles", temp);
+        result.put("encodeBufferPool", bufferPool);
+        result.put("bitmapPool", bitmaps);
+        result.put("coalescedRequests", coalesced);
+        result.put("memoryPressure", getMemoryPressureName());
+        call.resolve(result);
+    }
+
+    private synchronized String getMemoryPressureName() {
+        switch (memoryPressure) {
+            case MEMORY_PRESSURE_CRITICAL:
+                return "critical";
+            case MEMORY_PRESSURE_MODERATE:
+                return "moderate";
+            default:
+                return "none";
+        }
+    }
+
     private String _getAlbumsPath() {
         if (Build.VERSION.SDK_INT >= API_LEVEL_29) {
             return getContext().getExternalMediaDirs()[0].getAbsolutePath();
@@ -778,125 +1686,521 @@ public class MediaPlugin extends Plugin {
 
     private void _saveMedia(PluginCall call) {
         Log.d("DEBUG LOG", "___SAVE MEDIA TO ALBUM");
-        String inputPath = call.getString("path");
-        if (inputPath == null) {
-            call.reject("Input file path is required", EC_ARG_ERROR);
-            return;
-        }
 
-        File inputFile;
+        // generate image file name using current date and time
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmssSSS").format(new Date());
+        String fileName = call.getString("fileName", "IMG_" + timeStamp);
+
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, () ->
+            saveOne(
+                call.getString("path"),
+                call.getString("albumIdentifier"),
+                fileName,
+                new SaveCallback() {
+                    @Override
+                    public void onSaved(SavedMedia saved) {
+                        if (saved.identifier == null) {
+                            scanPhoto(saved.file);
+                        }
 
-        if (inputPath.startsWith("data:")) {
-            try {
-                String base64EncodedString = inputPath.substring(inputPath.indexOf(",") + 1);
-                byte[] decodedBytes = Base64.decode(base64EncodedString, Base64.DEFAULT);
-                String mime = inputPath.split(";", 2)[0].split(":")[1];
-                String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mime);
-                if (extension == null || extension.isEmpty()) {
-                    call.reject("Cannot identify media type to save image.", EC_ARG_ERROR);
-                    return;
+                        JSObject result = new JSObject();
+                        result.put("filePath", saved.file.toString());
+                        if (saved.identifier != null) {
+                            result.put("identifier", saved.identifier);
+                        }
+                        call.resolve(result);
+                    }
+
+                    @Override
+                    public void onFailed(MediaSaveException e) {
+                        call.reject(e.getMessage(), e.code);
+                    }
                 }
+            )
+        );
+    }
+
+    private void _saveMedias(PluginCall call) {
+        Log.d("MediaPlugin", "___SAVE MEDIAS");
+
+        JSArray items = call.getArray("items");
+        if (items == null) {
+            call.reject("Must provide items", EC_ARG_ERROR);
+            return;
+        }
+
+        // Waits for the items saved in the background lane, so it's dispatched rather than run in it
+        scheduler.dispatch(() -> {
+            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmssSSS").format(new Date());
+            List<Future<SavedMedia>> pending = new ArrayList<>();
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject item = items.optJSONObject(i);
+                String defaultName = "IMG_" + timeStamp + "_" + i;
+                PendingSave save = new PendingSave();
+                pending.add(save);
+                scheduler.execute(MediaScheduler.Lane.BACKGROUND, () -> {
+                    if (item == null) {
+                        save.onFailed(new MediaSaveException("Item must be an object", EC_ARG_ERROR));
+                        return;
+                    }
+                    saveOne(
+                        item.has("path") ? item.optString("path") : null,
+                        item.has("albumIdentifier") ? item.optString("albumIdentifier") : null,
+                        item.has("fileName") ? item.optString("fileName") : defaultName,
+                        save
+                    );
+                });
+            }
 
+            JSArray results = new JSArray();
+            int savedCount = 0;
+            List<String> scanPaths = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                JSONObject item = items.optJSONObject(i);
+                JSObject result = new JSObject();
+                result.put("path", item != null && item.has("path") ? item.optString("path") : JSONObject.NULL);
                 try {
-                    inputFile = File.createTempFile("tmp", "." + extension, getContext().getCacheDir());
-                    OutputStream os = new FileOutputStream(inputFile);
-                    os.write(decodedBytes);
-                    os.close();
-                } catch (IOException e) {
-                    call.reject("Temporary file creation from data URL failed", EC_FS_ERROR);
+                    SavedMedia saved = pending.get(i).get();
+                    savedCount++;
+                    if (saved.identifier != null) {
+                        result.put("identifier", saved.identifier);
+                    } else {
+                        scanPaths.add(saved.file.getAbsolutePath());
+                    }
+                    result.put("filePath", saved.file.toString());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    result.put("filePath", JSONObject.NULL);
+                    result.put("error", cause != null ? cause.getMessage() : e.getMessage());
+                    result.put("code", cause instanceof MediaSaveException ? ((MediaSaveException) cause).code : EC_ARG_ERROR);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     return;
                 }
-            } catch (Exception e) {
-                call.reject("Data URL parsing failed.", EC_ARG_ERROR);
-                return;
+                results.put(result);
             }
-        } else if (inputPath.startsWith("http://") || inputPath.startsWith("https://")) {
-            OkHttpClient client = new OkHttpClient();
-            Request okrequest = new Request.Builder().url(inputPath).build();
-            try {
-                // Download image
-                Response response = client.newCall(okrequest).execute();
-                if (!response.isSuccessful() || response.body() == null) {
-                    throw new IOException();
-                }
 
-                // Get file extension from URL
-                String extension = MimeTypeMap.getFileExtensionFromUrl(inputPath);
-                // If it doesn't have it there,
-                // attempt to pull extension from MIME type
-                if (extension.isEmpty()) {
-                    ResponseBody body = response.body();
-                    if (body == null) {
-                        call.reject("Download failed", EC_DOWNLOAD_ERROR);
-                        return;
-                    }
+            // One scan for the whole batch instead of a broadcast per file. Items inserted through
+            // MediaStore are indexed already.
+            if (!scanPaths.isEmpty()) {
+                MediaScannerConnection.scanFile(getContext(), scanPaths.toArray(new String[0]), null, null);
+            }
 
-                    MediaType mt = body.contentType();
-                    if (mt == null) {
-                        call.reject("Cannot identify media type to save image.", EC_ARG_ERROR);
-                        return;
-                    }
+            JSObject response = new JSObject();
+            response.put("results", results);
+            Log.d("MediaPlugin", "___SAVE MEDIAS FINISHED: " + savedCount + " of " + pending.size() + " saved");
+            call.resolve(response);
+        });
+    }
 
-                    String mime = mt.type() + "/" + mt.subtype();
-                    extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mime);
-                }
+    /**
+     * Thrown when saving a media item fails, with the error code to report.
+     */
+    private static class MediaSaveException extends Exception {
 
-                // Still no extension? reject
-                if (extension == null || extension.isEmpty()) {
-                    call.reject("Cannot identify media type to save image.", EC_ARG_ERROR);
-                    return;
-                }
+        final String code;
 
-                // Save to temp file
-                try {
-                    inputFile = File.createTempFile("tmp", "." + extension, getContext().getCacheDir());
-                    OutputStream os = new FileOutputStream(inputFile);
-                    os.write(response.body().bytes());
-                    os.close();
-                } catch (IOException e) {
-                    call.reject("Saving download to device failed.", EC_FS_ERROR);
-                    return;
-                }
-            } catch (IOException e) {
-                call.reject("Download failed", EC_DOWNLOAD_ERROR);
+        MediaSaveException(String message, String code) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static class SavedMedia {
+
+        final File file;
+        // Content URI if the item was inserted through MediaStore, in which case it is indexed already
+        final String identifier;
+
+        SavedMedia(File file, String identifier) {
+            this.file = file;
+            this.identifier = identifier;
+        }
+    }
+
+    /**
+     * Receives the outcome of a save, on the lane thread that finished it.
+     */
+    private interface SaveCallback {
+        void onSaved(SavedMedia saved);
+
+        void onFailed(MediaSaveException e);
+    }
+
+    /**
+     * A save whose outcome is waited for. It is completed through its callback and never run.
+     */
+    private static class PendingSave extends FutureTask<SavedMedia> implements SaveCallback {
+
+        PendingSave() {
+            super(() -> null);
+        }
+
+        @Override
+        public void onSaved(SavedMedia saved) {
+            set(saved);
+        }
+
+        @Override
+        public void onFailed(MediaSaveException e) {
+            setException(e);
+        }
+    }
+
+    /**
+     * Writes the bytes of a media item into the destination.
+     */
+    private interface MediaWriter {
+        void writeTo(OutputStream out) throws IOException, MediaSaveException;
+    }
+
+    /**
+     * Saves one media item into an album, downloading or decoding it first if needed. The outcome is
+     * reported to the callback, since a download that backs off before a retry continues in a later
+     * lane task rather than blocking this one.
+     *
+     * On API 29+ the item is inserted through MediaStore as a pending row and streamed into it, so
+     * every byte is written once and the item can be queried as soon as it is reported. Otherwise, or
+     * if MediaStore doesn't accept the album's location, it is written to the album directory and has
+     * to be scanned by the caller, which lets several copies be registered with the scanner at once.
+     */
+    private void saveOne(String inputPath, String album, String fileName, SaveCallback callback) {
+        SavedMedia saved;
+        try {
+            File albumDir = getAlbumDir(inputPath, album);
+            if (inputPath.startsWith("http://") || inputPath.startsWith("https://")) {
+                downloadToAlbum(inputPath, albumDir, fileName, callback);
                 return;
             }
-        } else {
-            Uri inputUri = Uri.parse(inputPath);
-            inputFile = new File(inputUri.getPath());
+            saved = saveToAlbum(inputPath, albumDir, fileName);
+        } catch (MediaSaveException e) {
+            callback.onFailed(e);
+            return;
+        } catch (RuntimeException e) {
+            callback.onFailed(unexpectedSaveFailure(e));
+            return;
+        }
+        callback.onSaved(saved);
+    }
+
+    /**
+     * Wraps an unexpected failure of a save, reported like any other so the call still settles.
+     */
+    private static MediaSaveException unexpectedSaveFailure(RuntimeException e) {
+        Log.e("MediaPlugin", "Saving media failed", e);
+        return new MediaSaveException("Error occurred: " + e, EC_ARG_ERROR);
+    }
+
+    private File getAlbumDir(String inputPath, String album) throws MediaSaveException {
+        if (inputPath == null) {
+            throw new MediaSaveException("Input file path is required", EC_ARG_ERROR);
         }
 
-        String album = call.getString("albumIdentifier");
         File albumDir = null;
         Log.d("SDK BUILD VERSION", String.valueOf(Build.VERSION.SDK_INT));
 
         if (album != null) {
             albumDir = new File(album);
         } else {
-            call.reject("Album identifier required", EC_ARG_ERROR);
-            return;
+            throw new MediaSaveException("Album identifier required", EC_ARG_ERROR);
         }
 
         if (!albumDir.exists() || !albumDir.isDirectory()) {
-            call.reject("Album identifier does not exist, use getAlbums() to get", EC_ARG_ERROR);
-            return;
+            throw new MediaSaveException("Album identifier does not exist, use getAlbums() to get", EC_ARG_ERROR);
         }
 
         Log.d("ENV LOG - ALBUM DIR", String.valueOf(albumDir));
+        return albumDir;
+    }
 
+    /**
+     * Saves a data URL or a local file.
+     */
+    private SavedMedia saveToAlbum(String inputPath, File albumDir, String fileName) throws MediaSaveException {
+        if (inputPath.startsWith("data:")) {
+            MediaDataUrl dataUrl;
+            String extension;
+            try {
+                dataUrl = MediaDataUrl.parse(inputPath);
+                extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(dataUrl.mimeType);
+            } catch (Exception e) {
+                throw new MediaSaveException("Data URL parsing failed.", EC_ARG_ERROR);
+            }
+            if (extension == null || extension.isEmpty()) {
+                throw new MediaSaveException("Cannot identify media type to save image.", EC_ARG_ERROR);
+            }
+
+            // Decoded straight into the destination, without a temp file
+            MediaWriter writer = out -> writeDataUrl(dataUrl, out);
+            SavedMedia inserted = insertMedia(albumDir, fileName, extension, writer);
+            if (inserted != null) {
+                return inserted;
+            }
+            return new SavedMedia(writeToAlbum(albumDir, fileName, extension, writer), null);
+        } else {
+            Uri inputUri = Uri.parse(inputPath);
+            File inputFile = new File(inputUri.getPath());
+
+            String name = inputFile.getName();
+            String extension = name.lastIndexOf('.') >= 0 ? name.substring(name.lastIndexOf('.') + 1) : "";
+            SavedMedia inserted = insertMedia(
+                albumDir,
+                fileName,
+                extension,
+                out -> {
+                    try (InputStream in = new FileInputStream(inputFile)) {
+                        copyStream(in, out);
+                    }
+                }
+            );
+            if (inserted != null) {
+                return inserted;
+            }
+
+            try {
+                return new SavedMedia(copyFile(inputFile, albumDir, fileName), null);
+            } catch (RuntimeException e) {
+                throw new MediaSaveException("Error occurred: " + e, EC_ARG_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Downloads a URL and saves it once the download completes, which may be in a later lane task.
+     */
+    private void downloadToAlbum(String url, File albumDir, String fileName, SaveCallback callback) throws MediaSaveException {
+        // Downloads go to a partial file named after the URL, so a failed save can be resumed
+        File partFile;
+        File metaFile;
         try {
-            // generate image file name using current date and time
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmssSSS").format(new Date());
-            String fileName = call.getString("fileName", "IMG_" + timeStamp);
-            File expFile = copyFile(inputFile, albumDir, fileName);
-            scanPhoto(expFile);
+            String partName = MediaDownloader.partialFileName(url);
+            partFile = tempFiles.acquire(partName);
+            if (partFile == null) {
+                // The same URL is being downloaded by another save right now
+                partFile = tempFiles.create("download-", ".part");
+                metaFile = tempFiles.create("download-", ".meta");
+            } else {
+                metaFile = tempFiles.acquire(partName + ".meta");
+                if (metaFile == null) {
+                    metaFile = tempFiles.create("download-", ".meta");
+                }
+            }
+        } catch (IOException e) {
+            throw new MediaSaveException("Saving download to device failed.", EC_FS_ERROR);
+        }
 
-            JSObject result = new JSObject();
-            result.put("filePath", expFile.toString());
-            call.resolve(result);
+        File downloaded = partFile;
+        File downloadedMeta = metaFile;
+        downloader.download(
+            url,
+            partFile,
+            metaFile,
+            (bytesWritten, contentLength) -> {
+                JSObject progress = new JSObject();
+                progress.put("url", url);
+                progress.put("bytesWritten", bytesWritten);
+                progress.put("contentLength", contentLength);
+                notifyListeners(EVENT_DOWNLOAD_PROGRESS, progress);
+            },
+            new MediaDownloader.Callback() {
+                @Override
+                public void onComplete(String mimeType) {
+                    SavedMedia saved;
+                    try {
+                        saved = saveDownload(url, downloaded, mimeType, albumDir, fileName);
+                    } catch (MediaSaveException e) {
+                        callback.onFailed(e);
+                        return;
+                    } catch (RuntimeException e) {
+                        callback.onFailed(unexpectedSaveFailure(e));
+                        return;
+                    } finally {
+                        tempFiles.delete(downloaded);
+                        tempFiles.delete(downloadedMeta);
+                    }
+                    callback.onSaved(saved);
+                }
+
+                @Override
+                public void onFailure(IOException e) {
+                    // Keep what was downloaded for the next attempt
+                    tempFiles.release(downloaded);
+                    tempFiles.release(downloadedMeta);
+                    callback.onFailed(new MediaSaveException("Download failed", EC_DOWNLOAD_ERROR));
+                }
+            }
+        );
+    }
+
+    private SavedMedia saveDownload(String url, File partFile, String mime, File albumDir, String fileName) throws MediaSaveException {
+        // Get file extension from URL
+        String extension = MimeTypeMap.getFileExtensionFromUrl(url);
+        // If it doesn't have it there,
+        // attempt to pull extension from MIME type
+        if (extension.isEmpty()) {
+            if (mime == null) {
+                throw new MediaSaveException("Cannot identify media type to save image.", EC_ARG_ERROR);
+            }
+
+            extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mime);
+        }
+
+        // Still no extension? reject
+        if (extension == null || extension.isEmpty()) {
+            throw new MediaSaveException("Cannot identify media type to save image.", EC_ARG_ERROR);
+        }
+
+        MediaWriter writer = out -> {
+            try (InputStream in = new FileInputStream(partFile)) {
+                copyStream(in, out);
+            }
+        };
+        SavedMedia inserted = insertMedia(albumDir, fileName, extension, writer);
+        if (inserted != null) {
+            return inserted;
+        }
+        return new SavedMedia(writeToAlbum(albumDir, fileName, extension, writer), null);
+    }
+
+    /**
+     * Inserts a media item into MediaStore as a pending row under the album's relative path, streams
+     * its bytes in and then publishes it.
+     *
+     * @return the saved item, or null if MediaStore can't hold it (below API 29, an album outside the
+     * shared storage root, or a type other than image or video) and the caller has to fall back
+     */
+    private SavedMedia insertMedia(File albumDir, String fileName, String extension, MediaWriter writer) throws MediaSaveException {
+        if (Build.VERSION.SDK_INT < API_LEVEL_29) {
+            return null;
+        }
+
+        String root = Environment.getExternalStorageDirectory().getAbsolutePath() + "/";
+        String albumPath = albumDir.getAbsolutePath();
+        String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase(Locale.US));
+        if (!albumPath.startsWith(root) || mime == null) {
+            return null;
+        }
+
+        Uri collection;
+        if (mime.startsWith("image/")) {
+            collection = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        } else if (mime.startsWith("video/")) {
+            collection = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+        } else {
+            return null;
+        }
+
+        ContentResolver resolver = getContext().getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName + "." + extension);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mime);
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, albumPath.substring(root.length()) + "/");
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+        Uri uri;
+        try {
+            uri = resolver.insert(collection, values);
         } catch (RuntimeException e) {
-            call.reject("Error occurred: " + e, EC_ARG_ERROR);
-            return;
+            // Not a location MediaStore accepts for this type, e.g. an app-specific directory, or the
+            // provider refused the insert (SecurityException, IllegalStateException)
+            Log.d("MediaPlugin", "MediaStore rejected " + albumPath + ", falling back to a file copy: " + e);
+            return null;
+        }
+        if (uri == null) {
+            return null;
+        }
+
+        try {
+            try (OutputStream out = resolver.openOutputStream(uri)) {
+                if (out == null) {
+                    throw new IOException("Could not open " + uri);
+                }
+                writer.writeTo(out);
+            }
+
+            ContentValues published = new ContentValues();
+            published.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            resolver.update(uri, published, null, null);
+        } catch (IOException | RuntimeException e) {
+            deletePending(resolver, uri);
+            throw new MediaSaveException("Saving to media store failed: " + e.getMessage(), EC_FS_ERROR);
+        } catch (MediaSaveException e) {
+            deletePending(resolver, uri);
+            throw e;
+        }
+
+        // MediaStore may have renamed the item to avoid a clash
+        String displayName = fileName + "." + extension;
+        try (Cursor cursor = resolver.query(uri, new String[] { MediaStore.MediaColumns.DISPLAY_NAME }, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                displayName = cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            // The item is saved; only the reported file name may be off
+            Log.w("MediaPlugin", "Could not read the saved name of " + uri, e);
+        }
+
+        // Same form as the identifiers returned by getMedias
+        Uri identifier = Uri.withAppendedPath(collection, String.valueOf(ContentUris.parseId(uri)));
+        return new SavedMedia(new File(albumDir, displayName), identifier.toString());
+    }
+
+    /**
+     * Removes a pending row whose write failed. A failure here must not hide the original error, and
+     * MediaStore cleans up pending rows it is left with after a while.
+     */
+    private void deletePending(ContentResolver resolver, Uri uri) {
+        try {
+            resolver.delete(uri, null, null);
+        } catch (RuntimeException e) {
+            Log.w("MediaPlugin", "Could not remove pending item " + uri, e);
+        }
+    }
+
+    /**
+     * Writes a media item into a new file in the album directory, removing it again on failure.
+     */
+    private File writeToAlbum(File albumDir, String fileName, String extension, MediaWriter writer) throws MediaSaveException {
+        File newFile = new File(albumDir, fileName + "." + extension);
+        try (OutputStream out = new FileOutputStream(newFile)) {
+            writer.writeTo(out);
+        } catch (IOException e) {
+            newFile.delete();
+            throw new MediaSaveException("File creation failed: " + e.getMessage(), EC_FS_ERROR);
+        } catch (MediaSaveException e) {
+            newFile.delete();
+            throw e;
+        }
+        return newFile;
+    }
+
+    /**
+     * Streams the decoded payload of a base64 data URL. Heap use stays at one buffer, whatever the
+     * size of the payload.
+     */
+    private void writeDataUrl(MediaDataUrl dataUrl, OutputStream out) throws IOException, MediaSaveException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (InputStream in = dataUrl.openStream()) {
+            while (true) {
+                int read;
+                try {
+                    read = in.read(buffer);
+                } catch (IOException e) {
+                    throw new MediaSaveException("Data URL parsing failed.", EC_ARG_ERROR);
+                }
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static void copyStream(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
         }
     }
 
@@ -986,43 +2290,173 @@ public class MediaPlugin extends Plugin {
         bridge.getActivity().sendBroadcast(mediaScanIntent);
     }
 
-    private String getThumbnailBase64(Uri imageUri, int thumbnailWidth, int thumbnailHeight, int quality) {
+    private String getThumbnailBase64(
+        Uri imageUri,
+        long dateModified,
+        int thumbnailWidth,
+        int thumbnailHeight,
+        int quality,
+        CancellationSignal signal
+    ) {
+        byte[] byteArray = getThumbnailBytes(imageUri, dateModified, thumbnailWidth, thumbnailHeight, quality, signal);
+        if (byteArray == null) {
+            return null;
+        }
+
+        // Base64 takes 4 bytes per 3, so the buffer is sized exactly and the string is the only copy
+        MediaBufferPool.Buffer buffer = encodeBuffers.acquire(JPEG_DATA_URL_PREFIX.length + (byteArray.length + 2) / 3 * 4);
         try {
-            Bitmap thumbnail;
+            buffer.write(JPEG_DATA_URL_PREFIX, 0, JPEG_DATA_URL_PREFIX.length);
+            try (OutputStream base64 = new Base64OutputStream(buffer, Base64.NO_WRAP)) {
+                base64.write(byteArray);
+            }
+            return buffer.toAsciiString();
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        } finally {
+            encodeBuffers.release(buffer);
+        }
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                // For Android 10+ use loadThumbnail
-                Size size = new Size(thumbnailWidth, thumbnailHeight);
-                thumbnail = getActivity().getContentResolver().loadThumbnail(imageUri, size, null);
-            } else {
-                // For older versions, manually load and scale
-                Bitmap fullImage = MediaStore.Images.Media.getBitmap(getActivity().getContentResolver(), imageUri);
-                if (fullImage == null) {
-                    return null;
+    /**
+     * Returns the JPEG-encoded thumbnail for a media item, from the memory or disk cache when possible. The cache
+     * key includes DATE_MODIFIED, so edited media never serves a stale thumbnail.
+     *
+     * @throws OperationCanceledException if the signal is cancelled before or while generating it
+     */
+    private byte[] getThumbnailBytes(
+        Uri imageUri,
+        long dateModified,
+        int thumbnailWidth,
+        int thumbnailHeight,
+        int quality,
+        CancellationSignal signal
+    ) {
+        String cacheKey = thumbnailCacheKey(imageUri, dateModified, thumbnailWidth, thumbnailHeight, quality);
+
+        byte[] cached = thumbnailMemoryCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (thumbnailDiskCache != null) {
+            cached = thumbnailDiskCache.get(cacheKey);
+            if (cached != null) {
+                thumbnailMemoryCache.put(cacheKey, cached);
+                return cached;
+            }
+        }
+
+        try {
+            // Concurrent requests for the same thumbnail share one decode
+            return thumbnailFlights.run(
+                cacheKey,
+                signal,
+                () -> {
+                    byte[] byteArray = createThumbnailBytes(imageUri, thumbnailWidth, thumbnailHeight, quality, signal);
+                    if (byteArray != null) {
+                        thumbnailMemoryCache.put(cacheKey, byteArray);
+                        if (thumbnailDiskCache != null) {
+                            thumbnailDiskCache.put(cacheKey, byteArray);
+                        }
+                    }
+                    return byteArray;
                 }
+            );
+        } catch (IOException e) {
+            // Generation failures come back as null, so this was an interrupted wait
+            return null;
+        }
+    }
 
-                // Calculate scaling
-                float scale = Math.min((float) thumbnailWidth / fullImage.getWidth(), (float) thumbnailHeight / fullImage.getHeight());
+    /**
+     * Returns a file holding the JPEG-encoded thumbnail for a media item, so it can be loaded by the
+     * WebView directly instead of crossing the bridge as base64. The file lives in the disk cache.
+     */
+    private File getThumbnailFile(
+        Uri imageUri,
+        long dateModified,
+        int thumbnailWidth,
+        int thumbnailHeight,
+        int quality,
+        CancellationSignal signal
+    ) {
+        String cacheKey = thumbnailCacheKey(imageUri, dateModified, thumbnailWidth, thumbnailHeight, quality);
+        File file = thumbnailDiskCache.getFile(cacheKey);
+        if (file != null) {
+            return file;
+        }
 
-                int scaledWidth = Math.round(fullImage.getWidth() * scale);
-                int scaledHeight = Math.round(fullImage.getHeight() * scale);
+        byte[] byteArray = getThumbnailBytes(imageUri, dateModified, thumbnailWidth, thumbnailHeight, quality, signal);
+        if (byteArray == null) {
+            return null;
+        }
+
+        // A memory cache hit may not be on disk (anymore)
+        file = thumbnailDiskCache.getFile(cacheKey);
+        if (file == null) {
+            thumbnailDiskCache.put(cacheKey, byteArray);
+            file = thumbnailDiskCache.getFile(cacheKey);
+        }
+        return file;
+    }
+
+    private static String thumbnailCacheKey(Uri imageUri, long dateModified, int thumbnailWidth, int thumbnailHeight, int quality) {
+        return imageUri.getLastPathSegment() + "-" + dateModified + "-" + thumbnailWidth + "x" + thumbnailHeight + "-q" + quality + ".jpg";
+    }
 
-                thumbnail = Bitmap.createScaledBitmap(fullImage, scaledWidth, scaledHeight, true);
-                fullImage.recycle();
+    /**
+     * Whether an output option asks for files instead of data URLs. File output is served from the
+     * thumbnail disk cache, so it falls back to data URLs when that cache is disabled.
+     */
+    private boolean isPathOutput(String output) {
+        return "path".equals(output) && thumbnailDiskCache != null;
+    }
+
+    /**
+     * Returns the URL under which the WebView's local server serves a file.
+     */
+    private String getWebPath(File file) {
+        return bridge.getLocalUrl() + Bridge.CAPACITOR_FILE_START + file.getAbsolutePath();
+    }
+
+    private byte[] createThumbnailBytes(Uri imageUri, int thumbnailWidth, int thumbnailHeight, int quality, CancellationSignal signal) {
+        try {
+            Bitmap thumbnail;
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                // For Android 10+ use loadThumbnail, which stops early once the signal is cancelled
+                Size size = new Size(thumbnailWidth, thumbnailHeight);
+                thumbnail = getActivity().getContentResolver().loadThumbnail(imageUri, size, signal);
+            } else {
+                // For older versions, decode subsampled to the thumbnail size. The decode can't be
+                // interrupted, so cancellation is only checked before it starts.
+                signal.throwIfCanceled();
+                ContentResolver resolver = getActivity().getContentResolver();
+                thumbnail = MediaImageDecoder.decode(resolver, imageUri, thumbnailWidth, thumbnailHeight, bitmapPool);
             }
 
             if (thumbnail == null) {
                 return null;
             }
 
-            // Convert to base64
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            thumbnail.compress(Bitmap.CompressFormat.JPEG, quality, byteArrayOutputStream);
-            byte[] byteArray = byteArrayOutputStream.toByteArray();
-            thumbnail.recycle();
-
-            String base64 = Base64.encodeToString(byteArray, Base64.NO_WRAP);
-            return "data:image/jpeg;base64," + base64;
+            // JPEG thumbnails rarely take more than 2 bits per pixel
+            MediaBufferPool.Buffer buffer = encodeBuffers.acquire(thumbnailWidth * thumbnailHeight / 4);
+            try {
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, quality, buffer);
+                // The caches keep the result, so it gets its own exactly sized copy
+                return buffer.toByteArray();
+            } finally {
+                encodeBuffers.release(buffer);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    thumbnail.recycle();
+                } else {
+                    bitmapPool.put(thumbnail);
+                }
+            }
+        } catch (OperationCanceledException e) {
+            throw e;
         } catch (Exception e) {
             Log.e("MediaPlugin", "Error generating thumbnail", e);
             return null;
@@ -1030,17 +2464,11 @@ public class MediaPlugin extends Plugin {
     }
 
     private int[] getImageDimensions(Uri imageUri) {
-        try {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                getActivity().getContentResolver().openInputStream(imageUri);
-                BitmapFactory.decodeStream(getActivity().getContentResolver().openInputStream(imageUri), null, options);
-            } else {
-                BitmapFactory.decodeFile(imageUri.getPath(), options);
-            }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
 
+        try (InputStream is = getActivity().getContentResolver().openInputStream(imageUri)) {
+            BitmapFactory.decodeStream(is, null, options);
             return new int[] { options.outWidth, options.outHeight };
         } catch (Exception e) {
             Log.e("MediaPlugin", "Error getting image dimensions", e);
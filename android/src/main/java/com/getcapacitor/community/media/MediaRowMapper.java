@@ -0,0 +1,206 @@
+package com.getcapacitor.community.media;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import com.getcapacitor.JSObject;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import org.json.JSONObject;
+
+/**
+ * Maps rows of a getMedias cursor to media objects. Column indices are resolved once per cursor
+ * instead of once per row and field.
+ *
+ * Not thread-safe; use one mapper per cursor on the thread that walks it.
+ */
+class MediaRowMapper {
+
+    /**
+     * Columns to query for getMedias. On API 29+ this includes the stored dimensions and orientation,
+     * so rows don't need to be decoded just to learn their size.
+     */
+    static final String[] PROJECTION;
+
+    /**
+     * {@link #PROJECTION} plus the media type, for queries against the mixed Files collection.
+     */
+    static final String[] FILES_PROJECTION;
+
+    static {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            PROJECTION =
+                new String[] {
+                    MediaStore.MediaColumns._ID,
+                    MediaStore.MediaColumns.DATA,
+                    MediaStore.MediaColumns.DATE_ADDED,
+                    MediaStore.MediaColumns.DATE_MODIFIED,
+                    MediaStore.MediaColumns.DATE_TAKEN,
+                    MediaStore.MediaColumns.DISPLAY_NAME,
+                    MediaStore.MediaColumns.SIZE,
+                    MediaStore.MediaColumns.RELATIVE_PATH,
+                    MediaStore.MediaColumns.WIDTH,
+                    MediaStore.MediaColumns.HEIGHT,
+                    MediaStore.MediaColumns.ORIENTATION
+                };
+        } else {
+            PROJECTION =
+                new String[] {
+                    MediaStore.MediaColumns._ID,
+                    MediaStore.MediaColumns.DATA,
+                    MediaStore.MediaColumns.DATE_ADDED,
+                    MediaStore.MediaColumns.DATE_MODIFIED,
+                    MediaStore.MediaColumns.DISPLAY_NAME,
+                    MediaStore.MediaColumns.SIZE
+                };
+        }
+
+        FILES_PROJECTION = Arrays.copyOf(PROJECTION, PROJECTION.length + 1);
+        FILES_PROJECTION[PROJECTION.length] = MediaStore.Files.FileColumns.MEDIA_TYPE;
+    }
+
+    private final Uri collectionUri;
+    private final int mediaTypeIdx;
+    private final int idIdx;
+    private final int dateAddedIdx;
+    private final int dateModifiedIdx;
+    private final int dataIdx;
+    private final int relativePathIdx;
+    private final int widthIdx;
+    private final int heightIdx;
+    private final int orientationIdx;
+
+    private final SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+
+    /**
+     * @param collectionUri the URI the cursor was queried from. Rows from the Files collection are
+     *                      mapped to the Images or Video collection by their media type.
+     */
+    MediaRowMapper(Cursor cursor, Uri collectionUri) {
+        this.collectionUri = collectionUri;
+        mediaTypeIdx = cursor.getColumnIndex(MediaStore.Files.FileColumns.MEDIA_TYPE);
+        idIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID);
+        dateAddedIdx = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED);
+        dateModifiedIdx = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+        dataIdx = cursor.getColumnIndex(MediaStore.MediaColumns.DATA);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            relativePathIdx = cursor.getColumnIndex(MediaStore.MediaColumns.RELATIVE_PATH);
+            widthIdx = cursor.getColumnIndex(MediaStore.MediaColumns.WIDTH);
+            heightIdx = cursor.getColumnIndex(MediaStore.MediaColumns.HEIGHT);
+            orientationIdx = cursor.getColumnIndex(MediaStore.MediaColumns.ORIENTATION);
+        } else {
+            relativePathIdx = -1;
+            widthIdx = -1;
+            heightIdx = -1;
+            orientationIdx = -1;
+        }
+    }
+
+    /**
+     * Returns the content URI that identifies the row. This is always an Images or Video URI, also for
+     * rows read from the Files collection, so identifiers don't depend on how the media was queried.
+     */
+    Uri getMediaUri(Cursor cursor) {
+        Uri base = collectionUri;
+        if (mediaTypeIdx >= 0) {
+            base = isVideo(cursor) ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        }
+        return Uri.withAppendedPath(base, String.valueOf(cursor.getLong(idIdx)));
+    }
+
+    boolean isVideo(Cursor cursor) {
+        if (mediaTypeIdx >= 0) {
+            return cursor.getInt(mediaTypeIdx) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+        }
+        return collectionUri.equals(MediaStore.Video.Media.EXTERNAL_CONTENT_URI);
+    }
+
+    long getDateModified(Cursor cursor) {
+        return dateModifiedIdx >= 0 ? cursor.getLong(dateModifiedIdx) : 0;
+    }
+
+    /**
+     * Builds the cursor-derived part of a media object. fullWidth and fullHeight are only set when
+     * MediaStore knows them; legacy rows have to fall back to decoding the image bounds.
+     */
+    JSObject map(Cursor cursor, Uri mediaUri) {
+        long dateAdded = cursor.getLong(dateAddedIdx);
+        long dateModified = getDateModified(cursor);
+        String relativePath = relativePathIdx >= 0 ? cursor.getString(relativePathIdx) : null;
+        String data = dataIdx >= 0 ? cursor.getString(dataIdx) : null;
+        String relPath = relativePath != null ? relativePath.toLowerCase(Locale.US) : null;
+        String dataPath = data != null ? data.toLowerCase(Locale.US) : null;
+
+        // Create media object
+        JSObject media = new JSObject();
+        // Get identifier - use content URI for all Android versions
+        media.put("identifier", mediaUri.toString());
+        media.put("creationDate", iso.format(new Date(dateAdded * 1000)));
+        if (dateModified > 0) {
+            media.put("modificationDate", iso.format(new Date(dateModified * 1000)));
+        }
+        media.put("hasAdjustments", false); // Not available on Android
+        media.put("addedDate", JSONObject.NULL);
+        media.put("type", isVideo(cursor) ? "video" : "photo");
+        media.put("isFavorite", false); // Android doesn't have a native favorites concept
+
+        int width = widthIdx >= 0 ? cursor.getInt(widthIdx) : 0;
+        int height = heightIdx >= 0 ? cursor.getInt(heightIdx) : 0;
+        if (width > 0 && height > 0) {
+            media.put("fullWidth", width);
+            media.put("fullHeight", height);
+        }
+        if (orientationIdx >= 0) {
+            media.put("orientation", cursor.getInt(orientationIdx));
+        }
+
+        // Detect screenshots via RELATIVE_PATH (API 29+) or DATA path fallback
+        boolean isScreenshot =
+            (relPath != null && relPath.contains("screenshots")) || (dataPath != null && dataPath.contains("/screenshots/"));
+        media.put("isScreenshot", isScreenshot);
+
+        // Detect camera captures via DCIM/ path
+        boolean isCameraCapture = (relPath != null && relPath.contains("dcim/")) || (dataPath != null && dataPath.contains("/dcim/"));
+        media.put("isCameraCapture", isCameraCapture);
+
+        // Derive source from storage path
+        String pathForSource = relPath != null && !relPath.isEmpty() ? relPath : dataPath != null ? dataPath : "";
+        String source;
+        if (isScreenshot) {
+            source = "screenshot";
+        } else if (pathForSource.contains("whatsapp")) {
+            source = "messaging:whatsapp";
+        } else if (pathForSource.contains("telegram")) {
+            source = "messaging:telegram";
+        } else if (pathForSource.contains("messenger")) {
+            source = "messaging:messenger";
+        } else if (pathForSource.contains("signal")) {
+            source = "messaging:signal";
+        } else if (pathForSource.contains("/download/") || pathForSource.startsWith("download/")) {
+            source = "download";
+        } else if (pathForSource.contains("dcim/")) {
+            source = "camera";
+        } else if (pathForSource.contains("pictures/")) {
+            source = "pictures";
+        } else {
+            source = "other";
+        }
+        media.put("source", source);
+        media.put("sourceType", ""); // iOS-only: PHAsset.sourceType
+
+        // Add location (default to empty)
+        JSObject location = new JSObject();
+        location.put("latitude", 0);
+        location.put("longitude", 0);
+        location.put("heading", 0);
+        location.put("altitude", 0);
+        location.put("speed", 0);
+        media.put("location", location);
+        media.put("hasLocation", false); // Android location is not populated from EXIF
+
+        return media;
+    }
+}
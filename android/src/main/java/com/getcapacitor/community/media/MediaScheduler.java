@@ -0,0 +1,150 @@
+package com.getcapacitor.community.media;
+
+import android.os.Process;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the plugin's work in priority lanes, so requests for visible content don't wait behind bulk
+ * saves or prefetching.
+ *
+ * Each lane has its own concurrency limit. Queued tasks are started in lane order: while interactive
+ * work is queued, no queued prefetch or background task starts. Those lanes also run at background
+ * thread priority, so interactive threads win the CPU too. Running tasks are never interrupted.
+ *
+ * Lane tasks must not wait for other lane tasks, since a full lane would then deadlock. Work that
+ * fans out into lane tasks and waits for their results is dispatched separately and isn't limited,
+ * as it spends its time blocked.
+ */
+class MediaScheduler {
+
+    enum Lane {
+        // Visible thumbnails and single-item fetches
+        INTERACTIVE,
+        // Content that is about to become visible
+        PREFETCH,
+        // Saves, downloads and library indexing
+        BACKGROUND
+    }
+
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final ExecutorService dispatcher = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private int[] limits;
+    private final int[] running = new int[Lane.values().length];
+    private final List<ArrayDeque<Runnable>> queues = new ArrayList<>();
+    private boolean shutdown = false;
+
+    MediaScheduler(int interactiveThreads, int prefetchThreads, int backgroundThreads) {
+        limits = new int[] { interactiveThreads, prefetchThreads, backgroundThreads };
+        for (int i = 0; i < limits.length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+    <T> Future<T> submit(Lane lane, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        enqueue(lane, future);
+        return future;
+    }
+
+    void execute(Lane lane, Runnable task) {
+        enqueue(lane, task);
+    }
+
+    /**
+     * Queues a task in a lane once a delay has passed, such as a retry backing off. Nothing holds a
+     * lane slot while waiting.
+     */
+    void schedule(Lane lane, Runnable task, long delayMs) {
+        timer.schedule(
+            () -> {
+                try {
+                    enqueue(lane, task);
+                } catch (RejectedExecutionException e) {
+                    // Shut down while waiting, the task is dropped like the queued ones
+                }
+            },
+            delayMs,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Runs work that waits for lane tasks, such as a page whose thumbnails are generated in a lane.
+     */
+    void dispatch(Runnable task) {
+        dispatcher.execute(task);
+    }
+
+    /**
+     * Changes the concurrency limits. Running tasks over a lowered limit finish, but no new ones start
+     * in that lane until it is below the limit again.
+     */
+    synchronized void setLimits(int interactiveThreads, int prefetchThreads, int backgroundThreads) {
+        limits = new int[] { interactiveThreads, prefetchThreads, backgroundThreads };
+        if (!shutdown) {
+            drain();
+        }
+    }
+
+    synchronized void shutdownNow() {
+        shutdown = true;
+        for (ArrayDeque<Runnable> queue : queues) {
+            queue.clear();
+        }
+        workers.shutdownNow();
+        dispatcher.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private synchronized void enqueue(Lane lane, Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler has been shut down");
+        }
+        queues.get(lane.ordinal()).add(task);
+        drain();
+    }
+
+    /**
+     * Starts queued tasks while their lanes have capacity, highest lane first. A lane with tasks left
+     * over holds back all lanes below it.
+     */
+    private void drain() {
+        for (Lane lane : Lane.values()) {
+            ArrayDeque<Runnable> queue = queues.get(lane.ordinal());
+            while (!queue.isEmpty() && running[lane.ordinal()] < limits[lane.ordinal()]) {
+                Runnable task = queue.poll();
+                running[lane.ordinal()]++;
+                workers.execute(() -> run(lane, task));
+            }
+            if (!queue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void run(Lane lane, Runnable task) {
+        // Pool threads are shared between lanes, so the priority is set for every task
+        Process.setThreadPriority(lane == Lane.INTERACTIVE ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            task.run();
+        } finally {
+            synchronized (this) {
+                running[lane.ordinal()]--;
+                if (!shutdown) {
+                    drain();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.getcapacitor.community.media;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent computations of the same key: the first caller runs it, callers arriving while
+ * it is in flight wait for it and share its result. Nothing is kept once it completes, caching the
+ * result is up to the work itself.
+ *
+ * Results are shared between callers, so they must not be modified.
+ */
+class MediaSingleFlight<T> {
+
+    private final ConcurrentHashMap<String, FutureTask<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Runs the work for a key, or joins the run already in flight for it.
+     *
+     * A joined run that was cancelled by its own caller's signal is run again, unless the signal of
+     * this caller is cancelled as well.
+     */
+    T run(String key, CancellationSignal signal, Callable<T> work) throws IOException {
+        while (true) {
+            FutureTask<T> task = new FutureTask<>(work);
+            FutureTask<T> running = inFlight.putIfAbsent(key, task);
+            if (running == null) {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.remove(key, task);
+                }
+                return getResult(task);
+            }
+
+            coalescedCount.incrementAndGet();
+            try {
+                return getResult(running);
+            } catch (OperationCanceledException e) {
+                if (signal != null && signal.isCanceled()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    long coalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private static <T> T getResult(FutureTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shared result");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.getcapacitor.community.media;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.MediaStore;
+
+/**
+ * Watches the external MediaStore volume and exposes a generation that changes whenever the library
+ * does, so derived data such as counts can be cached until the next change.
+ */
+class MediaStoreObserver extends ContentObserver {
+
+    private static final Uri EXTERNAL_FILES_URI = MediaStore.Files.getContentUri("external");
+
+    private final Context context;
+    private final HandlerThread thread;
+    private volatile long changeCount = 0;
+
+    private MediaStoreObserver(Context context, HandlerThread thread) {
+        super(new Handler(thread.getLooper()));
+        this.context = context;
+        this.thread = thread;
+    }
+
+    static MediaStoreObserver register(Context context) {
+        HandlerThread thread = new HandlerThread("MediaStoreObserver");
+        thread.start();
+
+        MediaStoreObserver observer = new MediaStoreObserver(context.getApplicationContext(), thread);
+        context.getContentResolver().registerContentObserver(EXTERNAL_FILES_URI, true, observer);
+        return observer;
+    }
+
+    void unregister() {
+        context.getContentResolver().unregisterContentObserver(this);
+        thread.quitSafely();
+    }
+
+    @Override
+    public void onChange(boolean selfChange, Uri uri) {
+        changeCount++;
+    }
+
+    /**
+     * Returns a token that differs whenever the library may have changed. On API 30+ this includes the
+     * MediaStore generation, which also catches changes whose notification hasn't been delivered yet.
+     */
+    String getGeneration() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return changeCount + ":" + MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL_PRIMARY);
+        }
+        return String.valueOf(changeCount);
+    }
+}
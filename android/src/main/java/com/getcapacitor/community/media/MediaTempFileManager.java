@@ -0,0 +1,220 @@
+package com.getcapacitor.community.media;
+
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Owns the temporary files the plugin hands out or works with, such as partial downloads and image
+ * results written outside the image cache.
+ *
+ * All files live in one directory that is kept under a byte cap, checked whenever a file is created
+ * or released. Files older than the max age are removed first, then the least recently used ones.
+ * Files that are still being written or read are referenced and never removed; callers release them
+ * when done.
+ */
+class MediaTempFileManager {
+
+    // Exact names of the files earlier versions left directly in the cache dir: File.createTempFile
+    // with "image-" + time in ms and ".jpg" for image results, and with "tmp" and the extension of
+    // the media type for downloads and data URLs
+    private static final Pattern LEGACY_FILE = Pattern.compile(
+        "image-\\d{14,}\\.jpg|tmp\\d+\\.(jpe?g|png|gif|webp|bmp|heic|heif|mp4|3gp|webm|mkv|mov)"
+    );
+
+    /**
+     * A directory entry with its attributes read once, so they don't change while entries are sorted.
+     */
+    private static class Entry {
+
+        final File file;
+        final long lastModified;
+        final long length;
+
+        Entry(File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxAgeMs;
+
+    // Absolute path -> reference count
+    private final Map<String, Integer> references = new HashMap<>();
+
+    MediaTempFileManager(File directory, long maxBytes, long maxAgeMs) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Creates a new temporary file, referenced once on behalf of the caller. Trims the directory first
+     * if it is over the cap.
+     */
+    synchronized File create(String prefix, String suffix) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create temp directory " + directory);
+        }
+
+        trimIfOverCap();
+        File file = File.createTempFile(prefix, suffix, directory);
+        references.put(file.getAbsolutePath(), 1);
+        return file;
+    }
+
+    /**
+     * Returns the file with a fixed name, referenced once on behalf of the caller, so its content can
+     * be picked up again by a later call. Returns null if the file is in use already.
+     */
+    synchronized File acquire(String name) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create temp directory " + directory);
+        }
+
+        File file = new File(directory, name);
+        if (references.containsKey(file.getAbsolutePath())) {
+            return null;
+        }
+        references.put(file.getAbsolutePath(), 1);
+        return file;
+    }
+
+    synchronized void acquire(File file) {
+        Integer count = references.get(file.getAbsolutePath());
+        references.put(file.getAbsolutePath(), count != null ? count + 1 : 1);
+    }
+
+    /**
+     * Drops a reference. The file stays until it is evicted, so a path already handed to JS keeps
+     * working for a while. Trims the directory if the file took it over the cap.
+     */
+    synchronized void release(File file) {
+        Integer count = references.get(file.getAbsolutePath());
+        if (count == null || count <= 1) {
+            references.remove(file.getAbsolutePath());
+        } else {
+            references.put(file.getAbsolutePath(), count - 1);
+        }
+        file.setLastModified(System.currentTimeMillis());
+        trimIfOverCap();
+    }
+
+    /**
+     * Drops a reference and deletes the file right away, for files whose content has been consumed.
+     */
+    synchronized void delete(File file) {
+        Integer count = references.get(file.getAbsolutePath());
+        if (count == null || count <= 1) {
+            references.remove(file.getAbsolutePath());
+            file.delete();
+        } else {
+            references.put(file.getAbsolutePath(), count - 1);
+        }
+    }
+
+    /**
+     * Removes unreferenced files past the max age, then the least recently used ones until the
+     * directory fits in targetBytes.
+     */
+    synchronized void trimToSize(long targetBytes) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long size = 0;
+        Entry[] entries = new Entry[files.length];
+        for (int i = 0; i < files.length; i++) {
+            entries[i] = new Entry(files[i]);
+            size += entries[i].length;
+        }
+
+        Arrays.sort(entries, (a, b) -> Long.compare(a.lastModified, b.lastModified));
+        for (Entry entry : entries) {
+            if (references.containsKey(entry.file.getAbsolutePath())) {
+                continue;
+            }
+            if (size <= targetBytes && now - entry.lastModified < maxAgeMs) {
+                // Oldest first, so everything after this is newer too
+                break;
+            }
+
+            if (entry.file.delete()) {
+                size -= entry.length;
+            }
+        }
+    }
+
+    void trim() {
+        trimToSize(maxBytes);
+    }
+
+    private void trimIfOverCap() {
+        if (size() > maxBytes) {
+            trimToSize(maxBytes);
+        }
+    }
+
+    /**
+     * Deletes the temp files earlier versions created directly in the cache dir and never removed.
+     * Runs once: the marker file is created afterwards, and later calls return right away.
+     */
+    static void removeLegacyFiles(File cacheDir, File doneMarker) {
+        if (doneMarker.exists()) {
+            return;
+        }
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        int removed = 0;
+        for (File file : files) {
+            if (file.isFile() && LEGACY_FILE.matcher(file.getName()).matches() && file.delete()) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            Log.d("MediaPlugin", "Removed " + removed + " legacy temp files");
+        }
+
+        try {
+            doneMarker.createNewFile();
+        } catch (IOException e) {
+            Log.w("MediaPlugin", "Could not record the legacy temp file cleanup", e);
+        }
+    }
+
+    synchronized long size() {
+        File[] files = directory.listFiles();
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    synchronized int count() {
+        String[] names = directory.list();
+        return names != null ? names.length : 0;
+    }
+
+    synchronized int inUseCount() {
+        return references.size();
+    }
+
+    long maxSize() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,142 @@
+package com.getcapacitor.community.media;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A MediaStore stand-in backed by an in-memory SQLite table, so queries are run with their real
+ * selections. Every change advances the generation like the platform provider does on API 30+.
+ */
+public class FakeMediaProvider extends ContentProvider {
+
+    private SQLiteDatabase db;
+    private long generation = 0;
+    // Projection of every query, in order
+    final List<String[]> projections = new ArrayList<>();
+
+    @Override
+    public boolean onCreate() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL(
+            "CREATE TABLE files (" +
+            "_id INTEGER PRIMARY KEY, " +
+            "media_type INTEGER, " +
+            "date_modified INTEGER, " +
+            "generation_added INTEGER, " +
+            "generation_modified INTEGER, " +
+            "date_added INTEGER, " +
+            "bucket_id TEXT, " +
+            "bucket_display_name TEXT, " +
+            "_data TEXT)"
+        );
+        return true;
+    }
+
+    /**
+     * Adds an item as a fresh insert.
+     */
+    void addItem(long id, int mediaType, long dateModified) {
+        generation++;
+        putItem(id, mediaType, dateModified, generation, generation);
+    }
+
+    /**
+     * Adds an item that keeps the dates and generations it had before it was hidden, like a published
+     * pending item or an item restored from the trash.
+     */
+    void restoreItem(long id, int mediaType, long dateModified, long generationAdded, long generationModified) {
+        generation++;
+        putItem(id, mediaType, dateModified, generationAdded, generationModified);
+    }
+
+    /**
+     * Adds an item stored at a path, with the bucket MediaStore derives from its directory.
+     */
+    void addFile(long id, int mediaType, long dateAdded, String path) {
+        addItem(id, mediaType, dateAdded);
+        String directory = path.substring(0, path.lastIndexOf('/'));
+        ContentValues values = new ContentValues();
+        values.put("date_added", dateAdded);
+        values.put("bucket_id", String.valueOf(directory.toLowerCase(Locale.ROOT).hashCode()));
+        values.put("bucket_display_name", directory.substring(directory.lastIndexOf('/') + 1));
+        values.put("_data", path);
+        db.update("files", values, "_id = ?", new String[] { String.valueOf(id) });
+    }
+
+    void modifyItem(long id, long dateModified) {
+        generation++;
+        ContentValues values = new ContentValues();
+        values.put("date_modified", dateModified);
+        values.put("generation_modified", generation);
+        db.update("files", values, "_id = ?", new String[] { String.valueOf(id) });
+    }
+
+    void removeItem(long id) {
+        generation++;
+        db.delete("files", "_id = ?", new String[] { String.valueOf(id) });
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    private void putItem(long id, int mediaType, long dateModified, long generationAdded, long generationModified) {
+        ContentValues values = new ContentValues();
+        values.put("_id", id);
+        values.put("media_type", mediaType);
+        values.put("date_modified", dateModified);
+        values.put("generation_added", generationAdded);
+        values.put("generation_modified", generationModified);
+        db.insertOrThrow("files", null, values);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        projections.add(projection);
+        return db.query("files", projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        Bundle out = new Bundle();
+        if ("get_version".equals(method)) {
+            out.putString(Intent.EXTRA_TEXT, "1");
+        } else if ("get_generation".equals(method)) {
+            out.putLong(Intent.EXTRA_INDEX, generation);
+        }
+        return out;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    static String imageIdentifier(long id) {
+        return Uri.withAppendedPath(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, String.valueOf(id)).toString();
+    }
+}
@@ -0,0 +1,109 @@
+package com.getcapacitor.community.media;
+
+import static com.getcapacitor.community.media.FakeMediaProvider.imageIdentifier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.provider.MediaStore;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class MediaAlbumIndexTest {
+
+    private static final int IMAGE = MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+    private static final int VIDEO = MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeMediaProvider provider;
+    private MediaAlbumIndex index;
+
+    @Before
+    public void setUp() {
+        provider = Robolectric.setupContentProvider(FakeMediaProvider.class, MediaStore.AUTHORITY);
+        index = new MediaAlbumIndex(RuntimeEnvironment.getApplication(), new File(folder.getRoot(), "albums.json"));
+    }
+
+    @Test
+    public void aggregatesBucketsNewestFirst() {
+        provider.addFile(1, IMAGE, 100, "/storage/emulated/0/DCIM/Camera/a.jpg");
+        provider.addFile(2, IMAGE, 300, "/storage/emulated/0/Pictures/Screenshots/b.png");
+        provider.addFile(3, VIDEO, 200, "/storage/emulated/0/DCIM/Camera/c.mp4");
+        provider.addFile(4, IMAGE, 50, "/storage/emulated/0/DCIM/Camera/d.jpg");
+
+        List<MediaAlbumIndex.Album> albums = index.getAlbums("1");
+
+        assertEquals(2, albums.size());
+        MediaAlbumIndex.Album screenshots = albums.get(0);
+        assertEquals("Screenshots", screenshots.name);
+        assertEquals("/storage/emulated/0/Pictures/Screenshots", screenshots.identifier);
+        assertEquals(imageIdentifier(2), screenshots.coverIdentifier);
+        assertEquals(1, screenshots.count);
+
+        MediaAlbumIndex.Album camera = albums.get(1);
+        assertEquals("Camera", camera.name);
+        assertEquals("/storage/emulated/0/DCIM/Camera", camera.identifier);
+        assertEquals("content://media/external/video/media/3", camera.coverIdentifier);
+        assertEquals(3, camera.count);
+        assertEquals(200, camera.lastModified);
+    }
+
+    @Test
+    public void readsPathsOfCoversOnly() {
+        provider.addFile(1, IMAGE, 100, "/storage/emulated/0/DCIM/Camera/a.jpg");
+        provider.addFile(2, IMAGE, 200, "/storage/emulated/0/DCIM/Camera/b.jpg");
+        provider.addFile(3, IMAGE, 300, "/storage/emulated/0/Pictures/c.jpg");
+
+        index.getAlbums("1");
+
+        // The full-library scan is the only query with BUCKET_ID, and it must not read DATA
+        int scans = 0;
+        for (String[] projection : provider.projections) {
+            List<String> columns = Arrays.asList(projection);
+            if (columns.contains(MediaStore.MediaColumns.BUCKET_ID)) {
+                scans++;
+                assertFalse(columns.contains(MediaStore.MediaColumns.DATA));
+            }
+        }
+        assertEquals(1, scans);
+    }
+
+    @Test
+    public void servesIndexUntilGenerationChanges() {
+        provider.addFile(1, IMAGE, 100, "/storage/emulated/0/DCIM/Camera/a.jpg");
+        List<MediaAlbumIndex.Album> albums = index.getAlbums("1");
+
+        provider.addFile(2, IMAGE, 200, "/storage/emulated/0/Pictures/b.jpg");
+        assertEquals(albums, index.getAlbums("1"));
+        assertEquals(2, index.getAlbums("2").size());
+    }
+
+    @Test
+    public void returnsCurrentIndexWithoutBuilding() {
+        provider.addFile(1, IMAGE, 100, "/storage/emulated/0/DCIM/Camera/a.jpg");
+        assertNull(index.getIfCurrent("1"));
+        assertEquals(0, provider.projections.size());
+
+        List<MediaAlbumIndex.Album> albums = index.getAlbums("1");
+        int queries = provider.projections.size();
+
+        assertSame(albums, index.getIfCurrent("1"));
+        assertNull(index.getIfCurrent("2"));
+        assertEquals(queries, provider.projections.size());
+    }
+}
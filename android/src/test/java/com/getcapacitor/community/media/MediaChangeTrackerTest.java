@@ -0,0 +1,135 @@
+package com.getcapacitor.community.media;
+
+import static com.getcapacitor.community.media.FakeMediaProvider.imageIdentifier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.provider.MediaStore;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class MediaChangeTrackerTest {
+
+    private static final int IMAGE = MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeMediaProvider provider;
+    private MediaStoreObserver observer;
+    private MediaChangeTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        provider = Robolectric.setupContentProvider(FakeMediaProvider.class, MediaStore.AUTHORITY);
+        observer = MediaStoreObserver.register(context);
+        tracker = new MediaChangeTracker(context, new File(folder.getRoot(), "changes"), observer);
+
+        provider.addItem(1, IMAGE, 100);
+        provider.addItem(2, IMAGE, 100);
+        provider.addItem(4, IMAGE, 100);
+    }
+
+    @After
+    public void tearDown() {
+        observer.unregister();
+    }
+
+    @Test
+    public void reportsInsertsUpdatesAndDeletes() {
+        String token = tracker.getChanges(null).token;
+
+        provider.addItem(5, IMAGE, 200);
+        provider.modifyItem(2, 200);
+        provider.removeItem(1);
+        MediaChangeTracker.Changes changes = getChanges(token);
+
+        assertFalse(changes.fullResync);
+        assertEquals(Collections.singletonList(imageIdentifier(5)), changes.inserted);
+        assertEquals(Collections.singletonList(imageIdentifier(2)), changes.updated);
+        assertEquals(Collections.singletonList(imageIdentifier(1)), changes.deleted);
+    }
+
+    @Test
+    public void reportsRepublishedItemAsInsert() {
+        long oldGeneration = provider.generation();
+        String token = tracker.getChanges(null).token;
+
+        // Published pending item: added before the snapshot, modified after it
+        provider.restoreItem(3, IMAGE, 200, oldGeneration, provider.generation() + 1);
+        MediaChangeTracker.Changes changes = getChanges(token);
+
+        assertEquals(Collections.singletonList(imageIdentifier(3)), changes.inserted);
+        assertTrue(changes.updated.isEmpty());
+        assertTrue(changes.deleted.isEmpty());
+
+        // The item is part of the new snapshot, so its removal is seen
+        provider.removeItem(3);
+        changes = getChanges(changes.token);
+        assertTrue(changes.inserted.isEmpty());
+        assertEquals(Collections.singletonList(imageIdentifier(3)), changes.deleted);
+    }
+
+    @Test
+    public void reportsRestoredItemWithOldGenerationsAsInsert() {
+        long oldGeneration = provider.generation();
+        String token = tracker.getChanges(null).token;
+
+        // Restored or newly granted item whose generations all predate the snapshot
+        provider.restoreItem(3, IMAGE, 50, oldGeneration, oldGeneration);
+        MediaChangeTracker.Changes changes = getChanges(token);
+
+        assertEquals(Collections.singletonList(imageIdentifier(3)), changes.inserted);
+        assertTrue(changes.updated.isEmpty());
+        assertTrue(changes.deleted.isEmpty());
+
+        provider.modifyItem(3, 300);
+        changes = getChanges(changes.token);
+        assertTrue(changes.inserted.isEmpty());
+        assertEquals(Collections.singletonList(imageIdentifier(3)), changes.updated);
+    }
+
+    @Test
+    @Config(sdk = 29)
+    public void reportsRepublishedItemAsInsertBelowApi30() {
+        String token = tracker.getChanges(null).token;
+
+        provider.restoreItem(3, IMAGE, 200, 0, 0);
+        provider.restoreItem(0, IMAGE, 50, 0, 0);
+        provider.addItem(6, IMAGE, 60);
+        MediaChangeTracker.Changes changes = getChanges(token);
+
+        assertEquals(Arrays.asList(imageIdentifier(3), imageIdentifier(6), imageIdentifier(0)), changes.inserted);
+        // Items modified in the snapshot's last second are reported again, but none of the inserts
+        assertFalse(changes.updated.contains(imageIdentifier(3)));
+        assertTrue(changes.deleted.isEmpty());
+
+        provider.removeItem(0);
+        provider.removeItem(3);
+        changes = getChanges(changes.token);
+        assertTrue(changes.inserted.isEmpty());
+        assertEquals(Arrays.asList(imageIdentifier(0), imageIdentifier(3)), changes.deleted);
+    }
+
+    private MediaChangeTracker.Changes getChanges(String token) {
+        // Stands in for the change notification, which is delivered asynchronously
+        observer.onChange(false, null);
+        return tracker.getChanges(token);
+    }
+}
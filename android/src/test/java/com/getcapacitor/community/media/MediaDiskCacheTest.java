@@ -0,0 +1,164 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class MediaDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "cache");
+    }
+
+    @Test
+    public void returnsWhatWasPut() {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+
+        cache.put("alpha", bytes(4, 1));
+
+        assertArrayEquals(bytes(4, 1), cache.get("alpha"));
+        assertNull(cache.get("beta"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void replacingEntryCountsItsSizeOnce() {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+
+        cache.put("alpha", bytes(4, 1));
+        cache.put("alpha", bytes(6, 2));
+
+        assertArrayEquals(bytes(6, 2), cache.get("alpha"));
+        assertEquals(6, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        MediaDiskCache cache = new MediaDiskCache(directory, 10);
+        cache.put("alpha", bytes(4, 1));
+        cache.put("beta", bytes(4, 2));
+        cache.get("alpha");
+
+        cache.put("gamma", bytes(4, 3));
+
+        assertNull(cache.get("beta"));
+        assertFalse(new File(directory, "beta").exists());
+        assertNotNull(cache.get("alpha"));
+        assertNotNull(cache.get("gamma"));
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    public void rebuildsAccessOrderAfterRestart() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(directory, 10);
+        cache.put("alpha", bytes(4, 1));
+        cache.put("beta", bytes(4, 2));
+        setLastModified("alpha", 1000);
+        setLastModified("beta", 2000);
+        // Touches alpha, so it is now used more recently than beta
+        cache.get("alpha");
+
+        MediaDiskCache restarted = new MediaDiskCache(directory, 10);
+        assertEquals(8, restarted.size());
+        restarted.put("gamma", bytes(4, 3));
+
+        assertNull(restarted.get("beta"));
+        assertArrayEquals(bytes(4, 1), restarted.get("alpha"));
+        assertArrayEquals(bytes(4, 3), restarted.get("gamma"));
+    }
+
+    @Test
+    public void discardsIncompleteWritesOnRestart() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+        cache.put("alpha", bytes(4, 1));
+        // A write the process died in the middle of
+        File tmp = cache.newTempFile("beta");
+        Files.write(tmp.toPath(), bytes(2, 2));
+        assertNull(cache.get("beta"));
+
+        MediaDiskCache restarted = new MediaDiskCache(directory, 100);
+
+        assertEquals(4, restarted.size());
+        assertFalse(tmp.exists());
+        assertNull(restarted.get("beta"));
+        assertArrayEquals(bytes(4, 1), restarted.get("alpha"));
+    }
+
+    @Test
+    public void committedTempFileBecomesEntry() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+        File tmp = cache.newTempFile("alpha");
+        Files.write(tmp.toPath(), bytes(4, 1));
+
+        File file = cache.commit("alpha", tmp);
+
+        assertEquals(new File(directory, "alpha"), file);
+        assertFalse(tmp.exists());
+        assertArrayEquals(bytes(4, 1), cache.get("alpha"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void trimsOversizedDirectoryOnRestart() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+        // Access times unrelated to the names and the write order, so only they can decide
+        long[] accessed = new long[] { 5000, 2000, 8000, 1000, 7000, 3000, 6000, 4000 };
+        for (int i = 0; i < accessed.length; i++) {
+            cache.put("entry" + i, bytes(4, i));
+            setLastModified("entry" + i, accessed[i]);
+        }
+
+        // Restarted with room for half of them
+        MediaDiskCache restarted = new MediaDiskCache(directory, 16);
+
+        assertEquals(16, restarted.size());
+        for (int i = 0; i < accessed.length; i++) {
+            assertEquals("entry" + i, accessed[i] > 4000, new File(directory, "entry" + i).exists());
+        }
+    }
+
+    @Test
+    public void dropsEntriesMissingOrEmptyOnDisk() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(directory, 100);
+        cache.put("alpha", bytes(4, 1));
+        cache.put("beta", bytes(4, 2));
+
+        Files.write(new File(directory, "alpha").toPath(), new byte[0]);
+        assertTrue(new File(directory, "beta").delete());
+
+        assertNull(cache.get("alpha"));
+        assertNull(cache.get("beta"));
+        assertEquals(0, cache.size());
+    }
+
+    private void setLastModified(String key, long time) {
+        assertTrue(new File(directory, key).setLastModified(time));
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) value;
+        }
+        return data;
+    }
+}
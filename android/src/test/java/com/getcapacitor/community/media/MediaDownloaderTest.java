@@ -0,0 +1,373 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MediaDownloaderTest {
+
+    /**
+     * Records the outcome a download reports to its callback.
+     */
+    private static class Outcome implements MediaDownloader.Callback {
+
+        boolean done;
+        String mimeType;
+        IOException error;
+
+        @Override
+        public void onComplete(String mimeType) {
+            this.done = true;
+            this.mimeType = mimeType;
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            this.done = true;
+            this.error = e;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private MediaDownloader downloader;
+    private File partFile;
+    private File metaFile;
+    // Backoff delays the downloader asked for; retries run right away instead of after them
+    private final List<Long> retryDelays = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        MediaDownloader.RetryPolicy retryPolicy = new MediaDownloader.RetryPolicy(3, 100, 1000);
+        downloader =
+            new MediaDownloader(
+                new OkHttpClient(),
+                retryPolicy,
+                (retry, delayMs) -> {
+                    retryDelays.add(delayMs);
+                    retry.run();
+                }
+            );
+        partFile = new File(folder.getRoot(), "download.part");
+        metaFile = new File(folder.getRoot(), "download.meta");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void streamsBodyToDiskAsItArrives() throws Exception {
+        byte[] body = new byte[1024 * 1024];
+        new Random(1).nextBytes(body);
+        server.enqueue(new MockResponse().setBody(new Buffer().write(body)).throttleBody(64 * 1024, 20, TimeUnit.MILLISECONDS));
+
+        // Length of the partial file at each progress event
+        List<long[]> events = new ArrayList<>();
+        Outcome outcome = new Outcome();
+        downloader.download(
+            server.url("/photo.jpg").toString(),
+            partFile,
+            metaFile,
+            (bytesWritten, contentLength) -> events.add(new long[] { bytesWritten, contentLength, partFile.length() }),
+            outcome
+        );
+
+        assertNull(outcome.error);
+        assertArrayEquals(body, Files.readAllBytes(partFile.toPath()));
+        assertTrue(events.size() >= 2);
+        long previous = 0;
+        for (long[] event : events) {
+            // Everything reported is on disk already rather than held in memory
+            assertEquals(event[0], event[2]);
+            assertEquals(body.length, event[1]);
+            assertTrue(event[0] >= previous);
+            previous = event[0];
+        }
+        assertTrue(events.get(0)[0] < body.length);
+        assertEquals(body.length, events.get(events.size() - 1)[0]);
+    }
+
+    @Test
+    public void reportsUnknownLength() throws Exception {
+        server.enqueue(new MockResponse().setChunkedBody("hello world", 4));
+
+        List<long[]> events = new ArrayList<>();
+        Outcome outcome = new Outcome();
+        downloader.download(
+            server.url("/photo.jpg").toString(),
+            partFile,
+            metaFile,
+            (bytesWritten, contentLength) -> events.add(new long[] { bytesWritten, contentLength }),
+            outcome
+        );
+
+        assertNull(outcome.error);
+        assertEquals("hello world", readFile(partFile));
+        assertArrayEquals(new long[] { 11, -1 }, events.get(events.size() - 1));
+    }
+
+    @Test
+    public void returnsMimeTypeWithoutParameters() {
+        server.enqueue(new MockResponse().setHeader("Content-Type", "image/jpeg; charset=binary").setBody("hello world"));
+
+        assertEquals("image/jpeg", download().mimeType);
+    }
+
+    @Test
+    public void reusesConnectionsAcrossDownloads() throws Exception {
+        server.enqueue(new MockResponse().setBody("hello"));
+        server.enqueue(new MockResponse().setBody("world"));
+
+        assertNull(download().error);
+        partFile = new File(folder.getRoot(), "other.part");
+        metaFile = new File(folder.getRoot(), "other.meta");
+        assertNull(download().error);
+
+        // Requests on one connection are numbered from 0
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertEquals("world", readFile(partFile));
+    }
+
+    @Test
+    public void resumesPartialFileWithStoredValidator() throws Exception {
+        writeFile(partFile, "hello ");
+        writeFile(metaFile, "\"v1\"");
+        server.enqueue(partialResponse("bytes 6-10/11", "\"v1\"", "world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes=6-", request.getHeader("Range"));
+        assertEquals("\"v1\"", request.getHeader("If-Range"));
+        assertEquals("hello world", readFile(partFile));
+    }
+
+    @Test
+    public void resumesGzipEncodedBodyAtRawByteOffset() throws Exception {
+        byte[] content = new byte[64 * 1024];
+        new Random(2).nextBytes(content);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(encoded)) {
+            gzip.write(content);
+        }
+        byte[] gzipped = encoded.toByteArray();
+        int half = gzipped.length / 2;
+        // The connection drops after the first half of the encoded body
+        server.enqueue(
+            new MockResponse()
+                .setHeader("Content-Encoding", "gzip")
+                .setHeader("ETag", "\"v1\"")
+                .setBody(new Buffer().write(gzipped))
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+        );
+        server.enqueue(
+            new MockResponse()
+                .setResponseCode(206)
+                .setHeader("Content-Encoding", "gzip")
+                .setHeader("Content-Range", "bytes " + half + "-" + (gzipped.length - 1) + "/" + gzipped.length)
+                .setHeader("ETag", "\"v1\"")
+                .setBody(new Buffer().write(gzipped, half, gzipped.length - half))
+        );
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals("identity", server.takeRequest().getHeader("Accept-Encoding"));
+        RecordedRequest resumed = server.takeRequest();
+        assertEquals("identity", resumed.getHeader("Accept-Encoding"));
+        assertEquals("bytes=" + half + "-", resumed.getHeader("Range"));
+        // The partial file holds the entity as the server stores it, so the ranges line up
+        assertArrayEquals(gzipped, Files.readAllBytes(partFile.toPath()));
+    }
+
+    @Test
+    public void doesNotResumeWithoutValidator() throws Exception {
+        writeFile(partFile, "hello ");
+        server.enqueue(new MockResponse().setBody("hello world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertEquals("hello world", readFile(partFile));
+    }
+
+    @Test
+    public void restartsWhenResumedAtUnexpectedPosition() throws Exception {
+        writeFile(partFile, "hello ");
+        writeFile(metaFile, "\"v1\"");
+        server.enqueue(partialResponse("bytes 0-10/11", "\"v1\"", "hello world"));
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("hello world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals("bytes=6-", server.takeRequest().getHeader("Range"));
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertEquals("hello world", readFile(partFile));
+        assertEquals(Collections.singletonList(100L), retryDelays);
+    }
+
+    @Test
+    public void restartsWhenResumedEntityChanged() throws Exception {
+        writeFile(partFile, "hello ");
+        writeFile(metaFile, "\"v1\"");
+        server.enqueue(partialResponse("bytes 6-10/11", "\"v2\"", "there"));
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v2\"").setBody("hello there"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals("bytes=6-", server.takeRequest().getHeader("Range"));
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertEquals("hello there", readFile(partFile));
+        assertEquals("\"v2\"", readFile(metaFile));
+    }
+
+    @Test
+    public void discardsPartialFileWhenRangeNotSatisfiable() throws Exception {
+        writeFile(partFile, "hello world and more");
+        writeFile(metaFile, "\"v1\"");
+        server.enqueue(new MockResponse().setResponseCode(416));
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("hello world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals("bytes=20-", server.takeRequest().getHeader("Range"));
+        assertNull(server.takeRequest().getHeader("Range"));
+        assertEquals("hello world", readFile(partFile));
+    }
+
+    @Test
+    public void truncatesPartialFileWhenRangeIsIgnored() throws Exception {
+        writeFile(partFile, "stale ");
+        writeFile(metaFile, "\"v1\"");
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v2\"").setBody("hello world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals("bytes=6-", server.takeRequest().getHeader("Range"));
+        assertEquals("hello world", readFile(partFile));
+        assertEquals("\"v2\"", readFile(metaFile));
+        assertTrue(retryDelays.isEmpty());
+    }
+
+    @Test
+    public void retriesWithExponentialBackoff() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("hello world"));
+
+        Outcome outcome = download();
+
+        assertNull(outcome.error);
+        assertEquals(Arrays.asList(100L, 200L, 400L), retryDelays);
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void failsOnceRetriesAreExhausted() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        Outcome outcome = download();
+
+        assertEquals(503, ((MediaDownloader.HttpStatusException) outcome.error).code);
+        assertEquals(Arrays.asList(100L, 200L, 400L), retryDelays);
+    }
+
+    @Test
+    public void doesNotRetryFinalErrors() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        Outcome outcome = download();
+
+        assertEquals(404, ((MediaDownloader.HttpStatusException) outcome.error).code);
+        assertTrue(retryDelays.isEmpty());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void capsBackoffDelay() {
+        MediaDownloader.RetryPolicy policy = new MediaDownloader.RetryPolicy(100, 100, 1000);
+        assertEquals(800, policy.delayMs(3));
+        assertEquals(1000, policy.delayMs(4));
+        assertEquals(1000, policy.delayMs(62));
+    }
+
+    @Test
+    public void handsRetriesToTheScheduler() throws Exception {
+        List<Runnable> scheduled = new ArrayList<>();
+        MediaDownloader.RetryPolicy retryPolicy = new MediaDownloader.RetryPolicy(3, 100, 1000);
+        downloader = new MediaDownloader(new OkHttpClient(), retryPolicy, (retry, delayMs) -> scheduled.add(retry));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("hello world"));
+
+        Outcome outcome = download();
+
+        // The first attempt returned without waiting for the retry
+        assertFalse(outcome.done);
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertTrue(outcome.done);
+        assertNull(outcome.error);
+        assertEquals("hello world", readFile(partFile));
+    }
+
+    private Outcome download() {
+        Outcome outcome = new Outcome();
+        downloader.download(server.url("/photo.jpg").toString(), partFile, metaFile, null, outcome);
+        return outcome;
+    }
+
+    private static MockResponse partialResponse(String contentRange, String etag, String body) {
+        return new MockResponse().setResponseCode(206).setHeader("Content-Range", contentRange).setHeader("ETag", etag).setBody(body);
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,251 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.MediaStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class MediaPageTokenTest {
+
+    private static final String ID = MediaStore.MediaColumns._ID;
+    private static final String DATE_TAKEN = MediaStore.MediaColumns.DATE_TAKEN;
+    private static final String DATE_ADDED = MediaStore.MediaColumns.DATE_ADDED;
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE media (" + ID + " INTEGER PRIMARY KEY, " + DATE_TAKEN + " INTEGER, " + DATE_ADDED + " INTEGER)");
+        // Runs of equal and NULL sort values, so every tie-break is exercised
+        insert(1, 300L, 10);
+        insert(2, null, 20);
+        insert(3, 100L, 20);
+        insert(4, 300L, 20);
+        insert(5, null, 10);
+        insert(6, 100L, 10);
+        insert(7, 200L, 30);
+        insert(8, null, 20);
+        insert(9, 300L, 10);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void sortOrderBreaksTiesOnIdInDirectionOfFirstKey() {
+        assertEquals(DATE_TAKEN + " DESC, " + DATE_ADDED + " ASC, " + ID + " DESC", MediaPageToken.sortOrder(keys(false, true)));
+        assertEquals(DATE_TAKEN + " ASC, " + ID + " ASC", MediaPageToken.sortOrder(keys(true)));
+        assertEquals(ID + " DESC", MediaPageToken.sortOrder(Collections.emptyList()));
+    }
+
+    @Test
+    public void selectsAfterDescendingValue() {
+        List<String> args = new ArrayList<>();
+
+        String selection = selection(tokenAt(false, "300", 4), args);
+
+        assertEquals("((" + DATE_TAKEN + " < ? OR " + DATE_TAKEN + " IS NULL)) OR (" + DATE_TAKEN + " = ? AND " + ID + " < ?)", selection);
+        assertEquals(Arrays.asList("300", "300", "4"), args);
+    }
+
+    @Test
+    public void selectsAfterAscendingValue() {
+        List<String> args = new ArrayList<>();
+
+        assertEquals("(" + DATE_TAKEN + " > ?) OR (" + DATE_TAKEN + " = ? AND " + ID + " > ?)", selection(tokenAt(true, "100", 3), args));
+        assertEquals(Arrays.asList("100", "100", "3"), args);
+    }
+
+    @Test
+    public void selectsAfterNullAscending() {
+        List<String> args = new ArrayList<>();
+
+        String selection = selection(tokenAt(true, null, 2), args);
+
+        // NULL sorts first ascending, so every non-NULL value comes after it
+        assertEquals("(" + DATE_TAKEN + " IS NOT NULL) OR (" + DATE_TAKEN + " IS NULL AND " + ID + " > ?)", selection);
+        assertEquals(Collections.singletonList("2"), args);
+    }
+
+    @Test
+    public void selectsAfterNullDescending() {
+        List<String> args = new ArrayList<>();
+
+        // NULL sorts last descending, so only other NULL rows come after it
+        assertEquals("(" + DATE_TAKEN + " IS NULL AND " + ID + " < ?)", selection(tokenAt(false, null, 8), args));
+        assertEquals(Collections.singletonList("8"), args);
+    }
+
+    @Test
+    public void selectsAfterMultipleKeys() {
+        MatrixCursor cursor = new MatrixCursor(new String[] { ID, DATE_TAKEN, DATE_ADDED });
+        cursor.addRow(new Object[] { 4, 300, 20 });
+        cursor.moveToFirst();
+        List<String> args = new ArrayList<>();
+
+        String selection = selection(MediaPageToken.fromRow(keys(false, true), cursor), args);
+
+        assertEquals(
+            "((" +
+            DATE_TAKEN +
+            " < ? OR " +
+            DATE_TAKEN +
+            " IS NULL)) OR (" +
+            DATE_TAKEN +
+            " = ? AND " +
+            DATE_ADDED +
+            " > ?) OR (" +
+            DATE_TAKEN +
+            " = ? AND " +
+            DATE_ADDED +
+            " = ? AND " +
+            ID +
+            " < ?)",
+            selection
+        );
+        assertEquals(Arrays.asList("300", "300", "20", "300", "20", "4"), args);
+    }
+
+    @Test
+    public void appendsToExistingSelection() {
+        List<String> clauses = new ArrayList<>(Collections.singletonList(DATE_ADDED + " > ?"));
+        List<String> args = new ArrayList<>(Collections.singletonList("5"));
+
+        tokenAt(true, "100", 3).appendSelection(clauses, args);
+
+        assertEquals(2, clauses.size());
+        assertEquals(DATE_ADDED + " > ?", clauses.get(0));
+        assertEquals(Arrays.asList("5", "100", "100", "3"), args);
+    }
+
+    @Test
+    public void roundTripsThroughEncoding() {
+        MediaPageToken token = MediaPageToken.decode(tokenAt(false, null, 8).encode());
+
+        assertTrue(token.matches(keys(false)));
+        assertFalse(token.matches(keys(true)));
+        assertFalse(token.matches(keys(false, true)));
+        List<String> args = new ArrayList<>();
+        assertEquals("(" + DATE_TAKEN + " IS NULL AND " + ID + " < ?)", selection(token, args));
+        assertEquals(Collections.singletonList("8"), args);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedToken() {
+        MediaPageToken.decode("not a token");
+    }
+
+    @Test
+    public void pagesThroughNullsAndTiesDescending() {
+        assertPagesMatchFullQuery(keys(false));
+    }
+
+    @Test
+    public void pagesThroughNullsAndTiesAscending() {
+        assertPagesMatchFullQuery(keys(true));
+    }
+
+    @Test
+    public void pagesThroughMixedDirections() {
+        assertPagesMatchFullQuery(keys(false, true));
+        assertPagesMatchFullQuery(keys(true, false));
+    }
+
+    /**
+     * Pages through the table two rows at a time, passing the encoded token between pages, and checks
+     * the rows come out exactly once and in the order of the full query.
+     */
+    private void assertPagesMatchFullQuery(List<MediaPageToken.SortKey> sortKeys) {
+        String sortOrder = MediaPageToken.sortOrder(sortKeys);
+        List<Long> expected = queryIds(sortOrder);
+
+        List<Long> paged = new ArrayList<>();
+        String pageToken = null;
+        for (int page = 0; page <= expected.size(); page++) {
+            List<String> clauses = new ArrayList<>();
+            List<String> args = new ArrayList<>();
+            if (pageToken != null) {
+                MediaPageToken token = MediaPageToken.decode(pageToken);
+                assertTrue(token.matches(sortKeys));
+                token.appendSelection(clauses, args);
+            }
+            String selection = clauses.isEmpty() ? null : String.join(" AND ", clauses);
+
+            try (Cursor cursor = db.query("media", null, selection, args.toArray(new String[0]), null, null, sortOrder, "2")) {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                do {
+                    paged.add(cursor.getLong(cursor.getColumnIndexOrThrow(ID)));
+                } while (cursor.moveToNext());
+                cursor.moveToLast();
+                pageToken = MediaPageToken.fromRow(sortKeys, cursor).encode();
+            }
+        }
+
+        assertEquals(sortOrder, expected, paged);
+    }
+
+    private List<Long> queryIds(String sortOrder) {
+        List<Long> ids = new ArrayList<>();
+        try (Cursor cursor = db.query("media", new String[] { ID }, null, null, null, null, sortOrder)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        }
+        return ids;
+    }
+
+    private void insert(long id, Long dateTaken, long dateAdded) {
+        db.execSQL("INSERT INTO media VALUES (?, ?, ?)", new Object[] { id, dateTaken, dateAdded });
+    }
+
+    /**
+     * Sort keys on DATE_TAKEN, then DATE_ADDED, in the given directions.
+     */
+    private static List<MediaPageToken.SortKey> keys(boolean... ascending) {
+        String[] columns = new String[] { DATE_TAKEN, DATE_ADDED };
+        List<MediaPageToken.SortKey> keys = new ArrayList<>();
+        for (int i = 0; i < ascending.length; i++) {
+            keys.add(new MediaPageToken.SortKey(columns[i], ascending[i]));
+        }
+        return keys;
+    }
+
+    private static MediaPageToken tokenAt(boolean ascending, String dateTaken, long id) {
+        MatrixCursor cursor = new MatrixCursor(new String[] { ID, DATE_TAKEN });
+        cursor.addRow(new Object[] { id, dateTaken });
+        cursor.moveToFirst();
+        return MediaPageToken.fromRow(keys(ascending), cursor);
+    }
+
+    /**
+     * Returns the clause the token adds to an empty selection, without its outer parentheses.
+     */
+    private static String selection(MediaPageToken token, List<String> args) {
+        List<String> clauses = new ArrayList<>();
+        token.appendSelection(clauses, args);
+        assertEquals(1, clauses.size());
+        String clause = clauses.get(0);
+        return clause.substring(1, clause.length() - 1);
+    }
+}
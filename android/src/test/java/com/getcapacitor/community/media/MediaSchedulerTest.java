@@ -0,0 +1,198 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Process;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class MediaSchedulerTest {
+
+    private final MediaScheduler scheduler = new MediaScheduler(1, 1, 1);
+    // "start x" and "end x" in the order tasks started and finished
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void startsQueuedInteractiveWorkBeforeBackgroundWork() throws Exception {
+        // Paused, so everything is queued before anything starts
+        scheduler.setLimits(0, 0, 0);
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, task("save", done));
+        scheduler.execute(MediaScheduler.Lane.PREFETCH, task("prefetch", done));
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, task("thumb1", done));
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, task("thumb2", done));
+
+        scheduler.setLimits(1, 1, 1);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(before("end thumb1", "start thumb2"));
+        // The second thumbnail was still queued, which holds back the lower lanes
+        assertTrue(before("end thumb1", "start prefetch"));
+        assertTrue(before("end thumb1", "start save"));
+    }
+
+    @Test
+    public void queuedInteractiveWorkHoldsBackFreeBackgroundSlots() throws Exception {
+        CountDownLatch releaseThumb = new CountDownLatch(1);
+        CountDownLatch releaseSave = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, blockingTask("thumb1", releaseThumb, done));
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, blockingTask("save1", releaseSave, done));
+        awaitEvents("start thumb1", "start save1");
+
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, task("thumb2", done));
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, task("save2", done));
+        releaseSave.countDown();
+        awaitEvents("end save1");
+        Thread.sleep(100);
+        assertFalse(events.contains("start save2"));
+
+        releaseThumb.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(before("start thumb2", "start save2"));
+    }
+
+    @Test
+    public void loweredLimitLetsRunningTasksFinish() throws Exception {
+        scheduler.setLimits(2, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, blockingTask("a", release, done));
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, blockingTask("b", release, done));
+        awaitEvents("start a", "start b");
+
+        scheduler.setLimits(1, 1, 1);
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, task("c", done));
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, task("d", done));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // Neither queued task started until both running ones were done
+        assertTrue(before("end a", "start c"));
+        assertTrue(before("end b", "start c"));
+        assertTrue(before("end c", "start d"));
+    }
+
+    @Test
+    public void raisedLimitStartsQueuedTasks() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, blockingTask("a", release, done));
+        scheduler.execute(MediaScheduler.Lane.BACKGROUND, blockingTask("b", release, done));
+        awaitEvents("start a");
+        assertFalse(events.contains("start b"));
+
+        scheduler.setLimits(1, 1, 2);
+
+        awaitEvents("start b");
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submitReturnsResult() throws Exception {
+        Future<String> future = scheduler.submit(MediaScheduler.Lane.PREFETCH, () -> "result");
+
+        assertEquals("result", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void runsLowerLanesAtBackgroundPriority() throws Exception {
+        int[] priorities = new int[2];
+        Future<?> interactive = scheduler.submit(
+            MediaScheduler.Lane.INTERACTIVE,
+            () -> priorities[0] = Process.getThreadPriority(Process.myTid())
+        );
+        Future<?> background = scheduler.submit(
+            MediaScheduler.Lane.BACKGROUND,
+            () -> priorities[1] = Process.getThreadPriority(Process.myTid())
+        );
+        interactive.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Process.THREAD_PRIORITY_DEFAULT, priorities[0]);
+        assertEquals(Process.THREAD_PRIORITY_BACKGROUND, priorities[1]);
+    }
+
+    @Test
+    public void scheduledTaskWaitsForItsDelay() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        scheduler.schedule(MediaScheduler.Lane.BACKGROUND, done::countDown, 200);
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    public void scheduledTaskIsDroppedAfterShutdown() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule(MediaScheduler.Lane.BACKGROUND, done::countDown, 100);
+
+        scheduler.shutdownNow();
+
+        assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectsTasksAfterShutdown() {
+        scheduler.shutdownNow();
+
+        scheduler.execute(MediaScheduler.Lane.INTERACTIVE, () -> {});
+    }
+
+    private Runnable task(String name, CountDownLatch done) {
+        return () -> {
+            events.add("start " + name);
+            events.add("end " + name);
+            done.countDown();
+        };
+    }
+
+    private Runnable blockingTask(String name, CountDownLatch release, CountDownLatch done) {
+        return () -> {
+            events.add("start " + name);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("end " + name);
+            done.countDown();
+        };
+    }
+
+    private void awaitEvents(String... expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!events.containsAll(Arrays.asList(expected))) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private boolean before(String first, String second) {
+        int firstIndex = events.indexOf(first);
+        int secondIndex = events.indexOf(second);
+        return firstIndex >= 0 && secondIndex >= 0 && firstIndex < secondIndex;
+    }
+}
@@ -0,0 +1,169 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class MediaSingleFlightTest {
+
+    private final MediaSingleFlight<String> flight = new MediaSingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sharesResultWithCallersArrivingInFlight() throws Exception {
+        Future<String> first = runInBackground("a", null, blockingWork(() -> "result"));
+        awaitRuns(1);
+        Future<String> second = runInBackground("a", null, blockingWork(() -> "other"));
+        awaitCoalesced(1);
+
+        release.countDown();
+
+        assertEquals("result", first.get(5, TimeUnit.SECONDS));
+        assertSame(first.get(), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void runsAgainOnceCompleted() throws Exception {
+        release.countDown();
+
+        assertEquals("a1", flight.run("a", null, blockingWork(() -> "a" + runs.get())));
+        assertEquals("a2", flight.run("a", null, blockingWork(() -> "a" + runs.get())));
+        assertEquals(0, flight.coalescedCount());
+    }
+
+    @Test
+    public void doesNotCoalesceDifferentKeys() throws Exception {
+        Future<String> first = runInBackground("a", null, blockingWork(() -> "a"));
+        awaitRuns(1);
+
+        // Runs while "a" is still blocked
+        assertEquals("b", flight.run("b", null, () -> "b"));
+
+        release.countDown();
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.coalescedCount());
+    }
+
+    @Test
+    public void sharesFailureWithCallersInFlight() throws Exception {
+        IOException failure = new IOException("unreadable");
+        Future<String> first = runInBackground("a", null, blockingWork(() -> {
+            throw failure;
+        }));
+        awaitRuns(1);
+        Future<String> second = runInBackground("a", null, blockingWork(() -> "other"));
+        awaitCoalesced(1);
+
+        release.countDown();
+
+        assertSame(failure, causeOf(first));
+        assertSame(failure, causeOf(second));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void rerunsWhenJoinedRunWasCancelledByItsCaller() throws Exception {
+        CancellationSignal ownerSignal = new CancellationSignal();
+        Future<String> owner = runInBackground("a", ownerSignal, blockingWork(() -> {
+            ownerSignal.throwIfCanceled();
+            return "owner";
+        }));
+        awaitRuns(1);
+        Future<String> joiner = runInBackground("a", new CancellationSignal(), blockingWork(() -> "joiner"));
+        awaitCoalesced(1);
+
+        ownerSignal.cancel();
+        release.countDown();
+
+        assertTrue(causeOf(owner) instanceof OperationCanceledException);
+        assertEquals("joiner", joiner.get(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void givesUpWhenOwnSignalIsCancelledToo() throws Exception {
+        CancellationSignal signal = new CancellationSignal();
+        Future<String> owner = runInBackground("a", signal, blockingWork(() -> {
+            signal.throwIfCanceled();
+            return "owner";
+        }));
+        awaitRuns(1);
+        Future<String> joiner = runInBackground("a", signal, blockingWork(() -> "joiner"));
+        awaitCoalesced(1);
+
+        signal.cancel();
+        release.countDown();
+
+        assertTrue(causeOf(owner) instanceof OperationCanceledException);
+        assertTrue(causeOf(joiner) instanceof OperationCanceledException);
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * Work that counts its runs and doesn't finish before the test releases it.
+     */
+    private Callable<String> blockingWork(Callable<String> result) {
+        return () -> {
+            runs.incrementAndGet();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return result.call();
+        };
+    }
+
+    private Future<String> runInBackground(String key, CancellationSignal signal, Callable<String> work) {
+        return executor.submit(() -> flight.run(key, signal, work));
+    }
+
+    private void awaitRuns(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (runs.get() < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flight.coalescedCount() < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static Throwable causeOf(Future<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("Expected the call to fail");
+        return null;
+    }
+}
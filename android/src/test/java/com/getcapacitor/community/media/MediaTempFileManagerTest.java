@@ -0,0 +1,128 @@
+package com.getcapacitor.community.media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class MediaTempFileManagerTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MediaTempFileManager tempFiles;
+
+    @Before
+    public void setUp() {
+        tempFiles = new MediaTempFileManager(new File(folder.getRoot(), "media-tmp"), 100, 24 * HOUR_MS);
+    }
+
+    @Test
+    public void trimsOnReleaseOverCap() throws Exception {
+        File older = tempFiles.create("image-", ".jpg");
+        write(older, 60);
+        tempFiles.release(older);
+        older.setLastModified(System.currentTimeMillis() - HOUR_MS);
+
+        File newer = tempFiles.create("image-", ".jpg");
+        write(newer, 60);
+        assertTrue(older.exists());
+        tempFiles.release(newer);
+
+        assertFalse(older.exists());
+        assertTrue(newer.exists());
+        assertEquals(60, tempFiles.size());
+    }
+
+    @Test
+    public void trimsOnCreateOverCap() throws Exception {
+        File older = tempFiles.create("download-", ".part");
+        tempFiles.release(older);
+        File downloading = tempFiles.create("download-", ".part");
+        // Grows past the cap while referenced, like a download
+        write(downloading, 150);
+        write(older, 10);
+        older.setLastModified(System.currentTimeMillis() - HOUR_MS);
+
+        tempFiles.create("download-", ".meta");
+
+        assertFalse(older.exists());
+        assertTrue(downloading.exists());
+    }
+
+    @Test
+    public void keepsReferencedFiles() throws Exception {
+        File first = tempFiles.create("image-", ".jpg");
+        File second = tempFiles.create("image-", ".jpg");
+        write(first, 80);
+        write(second, 80);
+
+        tempFiles.trim();
+
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+        assertEquals(2, tempFiles.inUseCount());
+    }
+
+    @Test
+    public void removesFilesPastMaxAge() throws Exception {
+        File stale = tempFiles.create("image-", ".jpg");
+        write(stale, 10);
+        tempFiles.release(stale);
+        stale.setLastModified(System.currentTimeMillis() - 25 * HOUR_MS);
+        File fresh = tempFiles.create("image-", ".jpg");
+        tempFiles.release(fresh);
+
+        tempFiles.trim();
+
+        assertFalse(stale.exists());
+        assertTrue(fresh.exists());
+    }
+
+    @Test
+    public void removesOnlyLegacyFileNamesOnce() throws Exception {
+        File cacheDir = folder.newFolder("cache");
+        File marker = new File(folder.getRoot(), "legacy-removed");
+        File legacyImage = create(cacheDir, "image-17000000000004821937.jpg");
+        File legacyDownload = create(cacheDir, "tmp6204918370527340911.mp4");
+        File otherTmp = create(cacheDir, "tmp6204918370527340911.db");
+        File otherImage = create(cacheDir, "image-cover.jpg");
+        File otherDownload = create(cacheDir, "tmp-42.png");
+
+        MediaTempFileManager.removeLegacyFiles(cacheDir, marker);
+
+        assertFalse(legacyImage.exists());
+        assertFalse(legacyDownload.exists());
+        assertTrue(otherTmp.exists());
+        assertTrue(otherImage.exists());
+        assertTrue(otherDownload.exists());
+        assertTrue(marker.exists());
+
+        // Files created after the migration are left alone
+        File later = create(cacheDir, "tmp123456789.jpg");
+        MediaTempFileManager.removeLegacyFiles(cacheDir, marker);
+        assertTrue(later.exists());
+    }
+
+    private static File create(File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        write(file, 1);
+        return file;
+    }
+
+    private static void write(File file, int length) throws IOException {
+        Files.write(file.toPath(), new byte[length]);
+    }
+}
@@ -1,3 +1,5 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export interface MediaPlugin {
   /**
    * Get the current permission status for accessing the photo library.
@@ -22,6 +24,72 @@ export interface MediaPlugin {
    * [Code Examples](https://github.com/capacitor-community/media/blob/master/example/src/components/GetMedias.tsx)
    */
   getMedias(options?: MediaFetchOptions): Promise<MediaResponse>;
+  /**
+   * Streaming variant of getMedias(). Resolves immediately with a request id,
+   * then emits `mediaItems` events with batches of items in order as their
+   * thumbnails finish, followed by a single `mediaComplete` event.
+   *
+   * Only available on Android.
+   */
+  getMediasStream(options?: MediaFetchOptions): Promise<MediaStreamStartResponse>;
+  /**
+   * Listen for batches of items from getMediasStream().
+   */
+  addListener(
+    eventName: 'mediaItems',
+    listenerFunc: (event: MediaItemsEvent) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Listen for the end of a getMediasStream() request.
+   */
+  addListener(
+    eventName: 'mediaComplete',
+    listenerFunc: (event: MediaCompleteEvent) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Listen for the progress of remote URLs being downloaded by savePhoto(),
+   * saveVideo() and saveMedias(). Android only.
+   */
+  addListener(
+    eventName: 'downloadProgress',
+    listenerFunc: (event: DownloadProgressEvent) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Remove all listeners for this plugin.
+   */
+  removeAllListeners(): Promise<void>;
+  /**
+   * Get thumbnails for a batch of media identifiers, e.g. only for the cells
+   * currently visible in a grid that was populated with
+   * `getMedias({ includeThumbnails: false })`.
+   *
+   * Results are returned in the same order as the identifiers. Items whose
+   * thumbnail could not be generated have a `null` dataUrl.
+   *
+   * Only available on Android.
+   */
+  getThumbnails(options: ThumbnailFetchOptions): Promise<ThumbnailResponse>;
+  /**
+   * Get the photos and videos that were inserted, updated or deleted since a
+   * token returned by a previous call, so a local copy of the library can be
+   * kept in sync without paging through all of it again.
+   *
+   * Call it once without `since` before the initial full load to obtain the
+   * first token. When `fullResync` is true the changes could not be determined
+   * (no token, or not the latest one) and everything has to be reloaded.
+   *
+   * Only available on Android.
+   */
+  getChanges(options?: MediaChangesOptions): Promise<MediaChangesResponse>;
+  /**
+   * Cancel a running getMedias(), getMediasStream(), getThumbnails() or
+   * getMediaByIdentifier() request by its `requestId`, e.g. for grid cells
+   * that were scrolled away. Work stops within one item; the request rejects
+   * with code `cancelled`, or ends its stream with that `code`.
+   *
+   * Only available on Android.
+   */
+  cancel(options: MediaCancelOptions): Promise<MediaCancelResponse>;
   /**
    * Get a filesystem path to a full-quality media asset by its identifier. iOS only.
    * This is not included for Android because on Android, a media asset's identifier IS its path!
@@ -32,8 +100,25 @@ export interface MediaPlugin {
    */
   getMediaByIdentifier(options?: {
     identifier: string;
+    /**
+     * Caller-chosen id to cancel the request with cancel(). Android only.
+     */
+    requestId?: string;
+    /**
+     * `prefetch` for content that isn't visible yet; it yields to
+     * `interactive` work (default). Android only.
+     */
+    priority?: 'interactive' | 'prefetch';
     width?: number;
     compression?: number;
+    /**
+     * What to return for images: a base64 `dataUrl`, a file `path` and
+     * `webPath`, or `both` (default). `path` writes the encoded image straight
+     * to the file. Results are cached on disk per identifier, modification
+     * date, width and compression, so repeated requests return the same file.
+     * Android only.
+     */
+    output?: 'dataUrl' | 'path' | 'both';
   }): Promise<MediaPath>;
   /**
    * Get list of albums.
@@ -63,6 +148,15 @@ export interface MediaPlugin {
    * [Code Examples](https://github.com/capacitor-community/media/blob/master/example/src/components/SaveMedia.tsx)
    */
   saveVideo(options?: MediaSaveOptions): Promise<PhotoResponse>;
+  /**
+   * Saves several photos or videos in one call. Items are downloaded and
+   * written in parallel and registered with the media scanner together.
+   * The call resolves once all items are done; failures are reported per
+   * item instead of rejecting the call.
+   *
+   * Only available on Android.
+   */
+  saveMedias(options: MediaSaveBatchOptions): Promise<MediaSaveBatchResponse>;
   /**
    * Creates an album.
    *
@@ -82,6 +176,13 @@ export interface MediaPlugin {
    * Code Examples: [basic](https://github.com/capacitor-community/media/blob/master/example/src/components/CreateDemoAlbum.tsx), [when saving media](https://github.com/capacitor-community/media/blob/master/example/src/components/SaveMedia.tsx)
    */
   getAlbumsPath(): Promise<AlbumsPathResponse>;
+  /**
+   * Get counters for the plugin's internal caches, e.g. to check
+   * thumbnail cache hit rates while tuning a gallery view.
+   *
+   * Only available on Android.
+   */
+  getMetrics(): Promise<MediaMetricsResponse>;
 }
 
 export interface MediaSaveOptions {
@@ -151,6 +252,15 @@ export interface MediaFetchOptions {
    */
   offset?: number;
 
+  /**
+   * Token from a previous response's `nextPageToken` to fetch the page after it.
+   * Unlike `offset`, the cost of a page does not grow with its depth, and newly
+   * added media does not shift the pages. Must be used with the same sort,
+   * types and date range as the request that returned it; `offset` is ignored.
+   * Android only.
+   */
+  pageToken?: string;
+
   /**
    * If we are to fetch total count (default true)
    */
@@ -160,6 +270,131 @@ export interface MediaFetchOptions {
    * Return only favorite photos (iOS only)
    */
   favoritesOnly?: boolean;
+
+  /**
+   * Whether to generate thumbnails (default true). When false, only metadata
+   * read from the media library is returned, which is much faster, and no
+   * items are dropped because of thumbnail failures. Use `getThumbnails()`
+   * to load thumbnails for the visible items afterwards. Android only.
+   */
+  includeThumbnails?: boolean;
+
+  /**
+   * How thumbnails are returned (default `dataUrl`). With `path`, each item
+   * gets a `thumbnailWebPath` served from the thumbnail disk cache instead of
+   * a base64 `dataUrl`, which keeps large pages off the bridge. Falls back to
+   * `dataUrl` when the disk cache is disabled. Android only.
+   */
+  thumbnailOutput?: 'dataUrl' | 'path';
+
+  /**
+   * Caller-chosen id to cancel the request with cancel(). getMediasStream()
+   * ignores it and returns its own. Android only.
+   */
+  requestId?: string;
+
+  /**
+   * Thumbnail work of `prefetch` requests, e.g. for the pages ahead of the
+   * visible one, runs with a lower concurrency limit and only once no
+   * `interactive` work (default) is queued. Android only.
+   */
+  priority?: 'interactive' | 'prefetch';
+}
+
+export interface ThumbnailFetchOptions {
+  /**
+   * Media identifiers as returned by getMedias()
+   */
+  identifiers: string[];
+  /**
+   * The width of thumbnail to return (default 512)
+   */
+  width?: number;
+  /**
+   * The height of thumbnail to return (default 384)
+   */
+  height?: number;
+  /**
+   * The quality of thumbnail to return as JPEG (0-100, default 85)
+   */
+  quality?: number;
+  /**
+   * Return a base64 `dataUrl` (default) or a `webPath` into the thumbnail
+   * disk cache. Falls back to `dataUrl` when the disk cache is disabled.
+   */
+  output?: 'dataUrl' | 'path';
+  /**
+   * Caller-chosen id to cancel the request with cancel()
+   */
+  requestId?: string;
+  /**
+   * Use `prefetch` for cells that aren't visible yet, so they yield to
+   * `interactive` requests (default)
+   */
+  priority?: 'interactive' | 'prefetch';
+}
+
+export interface MediaCancelOptions {
+  /**
+   * The id passed to the request, or returned by getMediasStream()
+   */
+  requestId: string;
+}
+
+export interface MediaCancelResponse {
+  /**
+   * False if no request with this id was running anymore
+   */
+  cancelled: boolean;
+}
+
+export interface MediaChangesOptions {
+  /**
+   * Token from the previous getChanges() response
+   */
+  since?: string;
+}
+
+export interface MediaChangesResponse {
+  /**
+   * Token to pass as `since` on the next call
+   */
+  token: string;
+  /**
+   * True if the changes since the given token are unknown and the caller has
+   * to reload the library; the lists are empty in that case
+   */
+  fullResync: boolean;
+  /**
+   * Identifiers of added media
+   */
+  inserted: string[];
+  /**
+   * Identifiers of modified media
+   */
+  updated: string[];
+  /**
+   * Identifiers of removed media
+   */
+  deleted: string[];
+}
+
+export interface ThumbnailResponse {
+  thumbnails: MediaThumbnail[];
+}
+
+export interface MediaThumbnail {
+  identifier: string;
+  /**
+   * Data URL for the thumbnail as a base64 encoded JPEG, or null if it could not be generated.
+   * Set when requested with `output: 'dataUrl'`.
+   */
+  dataUrl?: string | null;
+  /**
+   * URL of the thumbnail file that can be used as an image source, or null if it could not be
+   * generated. Set when requested with `output: 'path'`.
+   */
+  webPath?: string | null;
 }
 
 export interface MediaSort {
@@ -187,21 +422,186 @@ export interface MediaResponse {
   medias: MediaAsset[];
   totalCount: number;
   offset: number;
+  /**
+   * Pass as `pageToken` to fetch the next page, or null if this was the last page.
+   * Android only.
+   */
+  nextPageToken?: string | null;
+}
+
+export interface MediaStreamStartResponse {
+  /**
+   * Identifies the events belonging to this request
+   */
+  requestId: string;
+}
+
+export interface MediaItemsEvent {
+  requestId: string;
+  /**
+   * Next items of the page, in order
+   */
+  medias: MediaAsset[];
+}
+
+export interface MediaCompleteEvent {
+  requestId: string;
+  totalCount: number;
+  offset: number;
+  nextPageToken?: string | null;
+  /**
+   * Set if the request failed; items emitted before the failure remain valid
+   */
+  error?: string;
+  /**
+   * `cancelled` if the request was stopped by cancel()
+   */
+  code?: string;
+}
+
+export interface DownloadProgressEvent {
+  /**
+   * The URL passed as `path`
+   */
+  url: string;
+  bytesWritten: number;
+  /**
+   * Total size in bytes, or -1 if the server did not send it
+   */
+  contentLength: number;
 }
 
 export interface AlbumsPathResponse {
   path: string;
 }
 
+export interface MediaMetricsResponse {
+  /**
+   * In-memory cache of encoded thumbnails, sized from the device memory class.
+   */
+  thumbnailMemoryCache: MediaCacheMetrics;
+  /**
+   * On-disk cache of encoded thumbnails.
+   */
+  thumbnailDiskCache: MediaCacheMetrics;
+  /**
+   * On-disk cache of getMediaByIdentifier() results.
+   */
+  imageDiskCache: MediaCacheMetrics;
+  /**
+   * Temporary files for partial downloads and uncached image results.
+   */
+  tempFiles: MediaTempFileMetrics;
+  /**
+   * Reused buffers thumbnails and their data URLs are encoded into. A hit is
+   * an encode that didn't allocate a buffer of its own.
+   */
+  encodeBufferPool: MediaPoolMetrics;
+  /**
+   * Reused bitmaps thumbnails are decoded into on Android 9 and older. A hit
+   * is a decode that didn't allocate its own pixels.
+   */
+  bitmapPool: MediaPoolMetrics;
+  /**
+   * Requests that joined an identical thumbnail or image generation already in
+   * flight instead of decoding on their own.
+   */
+  coalescedRequests: MediaCoalescingMetrics;
+  /**
+   * Set from the system's memory signals. Under pressure the memory cache and
+   * pools are shrunk and fewer thumbnails are decoded at once; normal sizes
+   * return 30 seconds after the last signal. Android only.
+   */
+  memoryPressure: 'none' | 'moderate' | 'critical';
+}
+
+export interface MediaPoolMetrics {
+  /**
+   * Bytes currently held for reuse
+   */
+  size: number;
+  /**
+   * Most bytes held for reuse
+   */
+  maxSize: number;
+  /**
+   * Requests served from the pool
+   */
+  hitCount: number;
+  /**
+   * Requests that allocated instead
+   */
+  missCount: number;
+}
+
+export interface MediaCoalescingMetrics {
+  /**
+   * Thumbnail requests from getMedias(), getMediasStream() and getThumbnails()
+   */
+  thumbnails: number;
+  /**
+   * getMediaByIdentifier() image requests
+   */
+  images: number;
+}
+
+export interface MediaTempFileMetrics {
+  /**
+   * Bytes currently used
+   */
+  size: number;
+  /**
+   * Byte cap files are evicted down to
+   */
+  maxSize: number;
+  /**
+   * Number of files
+   */
+  count: number;
+  /**
+   * Number of files currently being written or read, which are never evicted
+   */
+  inUseCount: number;
+}
+
+export interface MediaCacheMetrics {
+  /**
+   * Current size in bytes
+   */
+  size: number;
+  /**
+   * Size cap in bytes
+   */
+  maxSize: number;
+  /**
+   * Number of lookups served from the cache
+   */
+  hitCount?: number;
+  /**
+   * Number of lookups that missed the cache
+   */
+  missCount?: number;
+  /**
+   * Number of entries evicted to stay under the size cap
+   */
+  evictionCount?: number;
+}
+
 export interface MediaAsset {
   /**
    * Platform-specific identifier
    */
   identifier: string;
   /**
-   * Data URL for a photo asset as a base64 encoded string (JPEG only supported)
+   * Data URL for a photo asset as a base64 encoded string (JPEG only supported).
+   * Not set when fetched with `includeThumbnails: false` or `thumbnailOutput: 'path'`.
+   */
+  dataUrl?: string;
+  /**
+   * URL of the thumbnail file that can be used as an image source.
+   * Only set when fetched with `thumbnailOutput: 'path'`. Android only.
    */
-  dataUrl: string;
+  thumbnailWebPath?: string;
   /**
    * ISO date string for creation date of asset
    */
@@ -214,6 +614,12 @@ export interface MediaAsset {
    * Full height of original asset
    */
   fullHeight: number;
+  /**
+   * Android-only: rotation of the original asset in degrees clockwise, from MediaStore ORIENTATION.
+   * fullWidth and fullHeight are reported before this rotation is applied.
+   * Only set on Android 10+.
+   */
+  orientation?: number;
   /**
    * Width of thumbnail preview
    */
@@ -277,17 +683,21 @@ export interface MediaAsset {
 
 export interface MediaPath {
   /**
-   * Path to media asset
+   * Path to media asset. Not set for Android images requested with `output: 'dataUrl'`.
    */
-  path: string;
+  path?: string;
+  /**
+   * URL of the file at `path` that can be used as an image source. Android only.
+   */
+  webPath?: string;
   /**
    * Identifier for media asset
    */
   identifier: string;
   /**
-   * Data URL for media asset
+   * Data URL for media asset. Not set for Android images requested with `output: 'path'`.
    */
-  dataUrl: string;
+  dataUrl?: string;
 }
 
 export interface MediaLocation {
@@ -321,6 +731,18 @@ export interface MediaAlbum {
   identifier: string;
   name: string;
   type?: MediaAlbumType;
+  /**
+   * Number of photos and videos in the album. Android only.
+   */
+  count?: number;
+  /**
+   * Identifier of the album's most recently added item, usable as its cover. Android only.
+   */
+  coverIdentifier?: string;
+  /**
+   * ISO date string of the latest modification of an item in the album. Android only.
+   */
+  modificationDate?: string;
 }
 
 export declare enum MediaAlbumType {
@@ -342,11 +764,51 @@ export interface MediaAlbumCreate {
   name: string;
 }
 
+export interface MediaSaveBatchOptions {
+  items: MediaSaveOptions[];
+}
+
+export interface MediaSaveBatchResponse {
+  /**
+   * One result per item, in the same order
+   */
+  results: MediaSaveResult[];
+}
+
+export interface MediaSaveResult {
+  /**
+   * The item's `path`
+   */
+  path: string | null;
+  /**
+   * Path of the saved file, or null if saving failed
+   */
+  filePath: string | null;
+  /**
+   * Media identifier of the saved item, see `PhotoResponse.identifier`
+   */
+  identifier?: string;
+  /**
+   * Error message if saving failed
+   */
+  error?: string;
+  /**
+   * Error code if saving failed, e.g. `downloadError`
+   */
+  code?: string;
+}
+
 export interface PhotoResponse {
   /**
    * Available on Android only.
    */
   filePath?: string;
+  /**
+   * Media identifier of the saved item, usable with getMedias() and
+   * getMediaByIdentifier() right away. Set on Android 10+ when the album is
+   * in shared storage, where items are saved through the media store.
+   */
+  identifier?: string;
 }
 
 export interface PermissionStatusResponse {
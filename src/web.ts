@@ -4,13 +4,23 @@ import type {
   AlbumsPathResponse,
   MediaAlbumCreate,
   MediaAlbumResponse,
+  MediaCancelOptions,
+  MediaCancelResponse,
+  MediaChangesOptions,
+  MediaChangesResponse,
   MediaFetchOptions,
+  MediaMetricsResponse,
   MediaPath,
   MediaPlugin,
   MediaResponse,
+  MediaSaveBatchOptions,
+  MediaSaveBatchResponse,
+  MediaStreamStartResponse,
   MediaSaveOptions,
   PermissionStatusResponse,
   PhotoResponse,
+  ThumbnailFetchOptions,
+  ThumbnailResponse,
 } from './definitions';
 
 export class MediaWeb extends WebPlugin implements MediaPlugin {
@@ -24,6 +34,22 @@ export class MediaWeb extends WebPlugin implements MediaPlugin {
     console.log('getMedias', options);
     throw this.unimplemented('Not implemented on web.');
   }
+  getMediasStream(options?: MediaFetchOptions): Promise<MediaStreamStartResponse> {
+    console.log('getMediasStream', options);
+    throw this.unimplemented('Not implemented on web.');
+  }
+  getThumbnails(options: ThumbnailFetchOptions): Promise<ThumbnailResponse> {
+    console.log('getThumbnails', options);
+    throw this.unimplemented('Not implemented on web.');
+  }
+  getChanges(options?: MediaChangesOptions): Promise<MediaChangesResponse> {
+    console.log('getChanges', options);
+    throw this.unimplemented('Not implemented on web.');
+  }
+  cancel(options: MediaCancelOptions): Promise<MediaCancelResponse> {
+    console.log('cancel', options);
+    throw this.unimplemented('Not implemented on web.');
+  }
   getMediaByIdentifier(options: any): Promise<MediaPath> {
     console.log('getMediaByIdentifier', options);
     throw this.unimplemented('Not implemented on web.');
@@ -39,6 +65,10 @@ export class MediaWeb extends WebPlugin implements MediaPlugin {
     console.log('saveVideo', options);
     throw this.unimplemented('Not implemented on web.');
   }
+  saveMedias(options: MediaSaveBatchOptions): Promise<MediaSaveBatchResponse> {
+    console.log('saveMedias', options);
+    throw this.unimplemented('Not implemented on web.');
+  }
   createAlbum(options: MediaAlbumCreate): Promise<void> {
     console.log('createAlbum', options);
     throw this.unimplemented('Not implemented on web.');
@@ -47,4 +77,7 @@ export class MediaWeb extends WebPlugin implements MediaPlugin {
       console.log('getAlbumsPath');
       throw this.unimplemented('Not implemented on web.');
   }
+  getMetrics(): Promise<MediaMetricsResponse> {
+    throw this.unimplemented('Not implemented on web.');
+  }
 }